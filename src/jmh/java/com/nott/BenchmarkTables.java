@@ -0,0 +1,117 @@
+package com.nott;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test tables for the benchmarks. Both sides default to in-memory H2, in MySQL and
+ * PostgreSQL mode. Point them at local instances with
+ * {@code -Dm2p.bench.source-url=... -Dm2p.bench.target-url=...} plus
+ * {@code .user}/{@code .password}, which is needed to benchmark {@link WriteMode#COPY}.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+public final class BenchmarkTables {
+
+    public static final String TABLE = "m2p_bench";
+
+    /**
+     * the column types of a table cycle through these
+     */
+    private static final String[] TYPES = {"bigint", "varchar(64)", "decimal(12,2)", "timestamp", "double precision", "integer"};
+    private static final int[] SQL_TYPES = {Types.BIGINT, Types.VARCHAR, Types.DECIMAL, Types.TIMESTAMP, Types.DOUBLE, Types.INTEGER};
+
+    private BenchmarkTables() {
+    }
+
+    public static DataSource source() {
+        return dataSource("source", "jdbc:h2:mem:m2p_source;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+    }
+
+    public static DataSource target() {
+        return dataSource("target", "jdbc:h2:mem:m2p_target;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+    }
+
+    private static DataSource dataSource(String side, String defaultUrl) {
+        String prefix = "m2p.bench." + side + "-url";
+        return new DriverManagerDataSource(System.getProperty(prefix, defaultUrl),
+                System.getProperty("m2p.bench." + side + ".user", ""),
+                System.getProperty("m2p.bench." + side + ".password", ""));
+    }
+
+    public static String[] columnNames(int columns) {
+        String[] names = new String[columns];
+        names[0] = "id";
+        for (int i = 1; i < columns; i++) {
+            names[i] = "c" + i;
+        }
+        return names;
+    }
+
+    public static int sqlType(int column) {
+        return SQL_TYPES[column % SQL_TYPES.length];
+    }
+
+    public static String ddl(int columns) {
+        StringBuilder sb = new StringBuilder("create table " + TABLE + " (id bigint primary key");
+        for (int i = 1; i < columns; i++) {
+            sb.append(", c").append(i).append(' ').append(TYPES[i % TYPES.length]);
+        }
+        return sb.append(")").toString();
+    }
+
+    public static Object value(int row, int column) {
+        switch (column % SQL_TYPES.length) {
+            case 0:
+                return (long) row;
+            case 1:
+                return "value-" + row + "-" + column;
+            case 2:
+                return BigDecimal.valueOf(row * 100L + column, 2);
+            case 3:
+                return new Timestamp(1690000000000L + row * 1000L);
+            case 4:
+                return row / 3.0;
+            default:
+                return row + column;
+        }
+    }
+
+    public static List<Object[]> rows(int rows, int columns) {
+        List<Object[]> result = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            Object[] values = new Object[columns];
+            for (int column = 0; column < columns; column++) {
+                values[column] = value(row, column);
+            }
+            result.add(values);
+        }
+        return result;
+    }
+
+    /**
+     * creates the table on both sides and fills the source with {@code rows} rows
+     */
+    public static void create(DataSource source, DataSource target, int rows, int columns) {
+        JdbcTemplate sourceJdbc = new JdbcTemplate(source);
+        JdbcTemplate targetJdbc = new JdbcTemplate(target);
+        sourceJdbc.execute("drop table if exists " + TABLE);
+        targetJdbc.execute("drop table if exists " + TABLE);
+        sourceJdbc.execute(ddl(columns).replace("double precision", "double"));
+        targetJdbc.execute(ddl(columns));
+        String insert = "insert into " + TABLE + " values(" + String.join(",", Collections.nCopies(columns, "?")) + ")";
+        List<Object[]> values = rows(rows, columns);
+        for (int from = 0; from < values.size(); from += 1000) {
+            sourceJdbc.batchUpdate(insert, values.subList(from, Math.min(values.size(), from + 1000)));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.nott;
+
+import com.nott.config.MigrationProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One table end to end through {@link DataTableMigration#migrate(String, String)},
+ * one operation is the whole table. Compare read and write strategies with
+ * {@code -p readMode=... -p writeMode=...}, COPY needs a PostgreSQL target, see
+ * {@link BenchmarkTables}.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MigrationThroughputBenchmark {
+
+    @Param({"OFFSET", "KEYSET", "STREAM"})
+    public ReadMode readMode;
+
+    @Param({"BATCH"})
+    public WriteMode writeMode;
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"16"})
+    public int columns;
+
+    @Param({"100", "1000"})
+    public int batchSize;
+
+    /**
+     * true to start at batchSize and let the batches adapt
+     */
+    @Param({"false", "true"})
+    public boolean adaptiveBatchSize;
+
+    @Param({"1"})
+    public int tableChunks;
+
+    private DataSource source;
+    private DataSource target;
+    private MigrationProperties properties;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = BenchmarkTables.source();
+        target = BenchmarkTables.target();
+        BenchmarkTables.create(source, target, rows, columns);
+        properties = new MigrationProperties();
+        properties.setReadMode(readMode);
+        properties.setWriteMode(writeMode);
+        properties.setBatchSize(batchSize);
+        properties.setAdaptiveBatchSize(adaptiveBatchSize);
+        properties.setTableChunks(tableChunks);
+        properties.setChunkMinRecords(0);
+        // H2 has no row streaming, a positive fetch size keeps it on a plain cursor
+        properties.setStreamFetchSize(batchSize);
+    }
+
+    @Setup(Level.Invocation)
+    public void truncateTarget() {
+        new JdbcTemplate(target).execute("truncate table " + BenchmarkTables.TABLE);
+    }
+
+    @Benchmark
+    public void migrate() throws Exception {
+        new DataTableMigration(source, target, BenchmarkTables.TABLE, new HashMap<>(), properties)
+                .migrate(BenchmarkTables.TABLE, BenchmarkTables.TABLE);
+    }
+}
@@ -0,0 +1,134 @@
+package com.nott;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row conversion of a page of rows: the old map based {@code rowToParam} against
+ * {@link RowConverter}. The page is a scrollable in-memory H2 ResultSet, binding goes
+ * to an H2 insert statement that is not executed.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RowConverterBenchmark {
+
+    private static final int PAGE = 1000;
+
+    @Param({"8", "32", "128"})
+    public int columns;
+
+    private String[] columnNames;
+    private ResultSet resultSet;
+    private RowConverter rowConverter;
+    private Map<String, String> columnMappings;
+    private RowBatch convertedRows;
+    private RowBatch readRows;
+    private List<Object[]> legacyRows;
+    private Connection connection;
+    private PreparedStatement insert;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        columnNames = BenchmarkTables.columnNames(columns);
+        connection = DriverManager.getConnection("jdbc:h2:mem:m2p_convert;MODE=MySQL;DATABASE_TO_LOWER=TRUE");
+        connection.createStatement().execute(BenchmarkTables.ddl(columns).replace("double precision", "double"));
+        insert = connection.prepareStatement("insert into " + BenchmarkTables.TABLE + " values("
+                + String.join(",", Collections.nCopies(columns, "?")) + ")");
+        for (Object[] row : BenchmarkTables.rows(PAGE, columns)) {
+            for (int i = 0; i < columns; i++) {
+                insert.setObject(i + 1, row[i]);
+            }
+            insert.executeUpdate();
+        }
+        resultSet = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY)
+                .executeQuery("select * from " + BenchmarkTables.TABLE);
+        rowConverter = RowConverter.compile(resultSet.getMetaData(), 0);
+        columnMappings = new HashMap<>();
+        convertedRows = RowBatch.of(rowConverter.getTypes(), PAGE);
+        readConvertedRows(convertedRows);
+        readRows = RowBatch.of(rowConverter.getTypes(), PAGE);
+        legacyRows = readLegacyRows();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public Object readLegacy() throws SQLException {
+        return readLegacyRows();
+    }
+
+    @Benchmark
+    public Object readConverted() throws SQLException {
+        readRows.clear();
+        readConvertedRows(readRows);
+        return readRows;
+    }
+
+    @Benchmark
+    public void bindLegacy() throws SQLException {
+        for (Object[] row : legacyRows) {
+            for (int i = 0; i < row.length; i++) {
+                insert.setObject(i + 1, row[i]);
+            }
+        }
+        insert.clearParameters();
+    }
+
+    @Benchmark
+    public void bindConverted() throws SQLException {
+        for (int row = 0; row < convertedRows.size(); row++) {
+            rowConverter.bind(insert, convertedRows, row);
+        }
+        insert.clearParameters();
+    }
+
+    private List<Object[]> readLegacyRows() throws SQLException {
+        resultSet.beforeFirst();
+        ColumnMapRowMapper rowMapper = new ColumnMapRowMapper();
+        List<Object[]> rows = new ArrayList<>(PAGE);
+        while (resultSet.next()) {
+            Map<String, Object> row = rowMapper.mapRow(resultSet, rows.size());
+            rows.add(Arrays.stream(columnNames)
+                    .map(colInSource -> columnMappings.getOrDefault(colInSource, colInSource))
+                    .map(row::get)
+                    .toArray());
+        }
+        return rows;
+    }
+
+    private void readConvertedRows(RowBatch rows) throws SQLException {
+        resultSet.beforeFirst();
+        while (resultSet.next()) {
+            rowConverter.read(resultSet, rows);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.nott;
+
+import com.nott.config.MigrationProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQL generation of {@link DataTableMigration} and COPY text encoding of a batch
+ * by {@link PgCopyWriter}.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SqlAndCopyBenchmark {
+
+    @Param({"8", "32", "128"})
+    public int columns;
+
+    @Param({"100", "1000"})
+    public int batchSize;
+
+    private DataTableMigration migration;
+    private PgCopyWriter copyWriter;
+    private RowBatch batch;
+    private PgCopyWriter.CopyBuffer copyBuffer;
+    private long copyBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        DataSource source = BenchmarkTables.source();
+        DataSource target = BenchmarkTables.target();
+        BenchmarkTables.create(source, target, batchSize, columns);
+        migration = new DataTableMigration(source, target, BenchmarkTables.TABLE, new HashMap<>(),
+                new MigrationProperties());
+        copyWriter = new PgCopyWriter(migration.getTargetJdbc(), BenchmarkTables.TABLE,
+                BenchmarkTables.columnNames(columns));
+        copyWriter.loadColumnTypes();
+        RowConverter rowConverter = migration.getTargetJdbc().query("select * from " + BenchmarkTables.TABLE
+                + " where 1 = 0", (ResultSetExtractor<RowConverter>) rs -> RowConverter.compile(rs.getMetaData(), 0));
+        batch = RowBatch.of(rowConverter.getTypes(), batchSize);
+        migration.getSourceJdbc().query("select * from " + BenchmarkTables.TABLE, rs -> {
+            rowConverter.read(rs, batch);
+        });
+        // encoded bytes are counted and dropped, as if sent
+        copyBuffer = new PgCopyWriter.CopyBuffer(64 * 1024, (bytes, offset, length) -> copyBytes += length);
+    }
+
+    @Benchmark
+    public String insertSql() {
+        return migration.getInsertSQL();
+    }
+
+    @Benchmark
+    public String keysetSql() {
+        return migration.getKeysetQuerySql(true);
+    }
+
+    @Benchmark
+    public long copyEncode() throws SQLException {
+        copyBytes = 0;
+        for (int row = 0; row < batch.size(); row++) {
+            copyWriter.appendRow(copyBuffer, batch, row, null);
+            copyBuffer.flushIfFull();
+        }
+        copyBuffer.flush();
+        return copyBytes;
+    }
+}
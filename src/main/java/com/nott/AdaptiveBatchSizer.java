@@ -0,0 +1,119 @@
+package com.nott;
+
+/**
+ * Picks the rows per batch of a table from how its writes go.
+ * <p>
+ * After every few batches of the current size the sizer compares the rows written per
+ * second with the previous round and keeps growing or shrinking the batch while that
+ * helps, reversing when it hurts. A round slower than the target write time always
+ * shrinks it. On top of the row count, a batch is kept under a byte budget using the
+ * average row size seen so far, so tables with large LOB columns read few rows at a time.
+ * <p>
+ * Writers of a table report from several threads while its readers ask for the next size,
+ * so every method is synchronized.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+public class AdaptiveBatchSizer {
+
+    /**
+     * batches of the current size measured before the size changes
+     */
+    private static final int ROUND = 3;
+
+    private static final double STEP = 1.5;
+
+    /**
+     * throughput changes smaller than this are noise
+     */
+    private static final double TOLERANCE = 0.05;
+
+    private final int minRows;
+    private final int maxRows;
+    private final long maxBytes;
+    private final long targetNanos;
+
+    private int rows;
+    private boolean growing = true;
+    private double lastThroughput;
+    private double avgRowBytes;
+
+    private int roundBatches;
+    private long roundRows;
+    private long roundNanos;
+
+    /**
+     * @param initialRows rows of the first batches
+     * @param maxBytes    estimated bytes a batch should stay under, 0 for no limit
+     * @param targetMillis write time of one batch not to go over, 0 for no limit
+     */
+    public AdaptiveBatchSizer(int initialRows, int minRows, int maxRows, long maxBytes, long targetMillis) {
+        this.minRows = Math.max(1, Math.min(minRows, maxRows));
+        this.maxRows = Math.max(this.minRows, maxRows);
+        this.maxBytes = maxBytes;
+        this.targetNanos = targetMillis * 1_000_000;
+        this.rows = clamp(initialRows);
+    }
+
+    /**
+     * a sizer that always answers {@code rows}
+     */
+    public static AdaptiveBatchSizer fixed(int rows) {
+        return new AdaptiveBatchSizer(rows, rows, rows, 0, 0);
+    }
+
+    /**
+     * @return rows to read for the next batch
+     */
+    public synchronized int getBatchSize() {
+        if (maxBytes <= 0 || avgRowBytes <= 0) {
+            return rows;
+        }
+        return (int) Math.max(minRows, Math.min(rows, maxBytes / avgRowBytes));
+    }
+
+    /**
+     * @param batchRows rows in the written batch
+     * @param bytes     estimated size of the batch
+     * @param nanos     time the write took
+     */
+    public synchronized void record(int batchRows, long bytes, long nanos) {
+        if (batchRows <= 0) {
+            return;
+        }
+        double rowBytes = (double) bytes / batchRows;
+        avgRowBytes = avgRowBytes == 0 ? rowBytes : avgRowBytes * 0.8 + rowBytes * 0.2;
+        if (minRows == maxRows || batchRows < getBatchSize() * 0.9) {
+            // a short tail batch, or one read before the size last changed
+            return;
+        }
+        roundBatches++;
+        roundRows += batchRows;
+        roundNanos += nanos;
+        if (roundBatches < ROUND) {
+            return;
+        }
+        double throughput = roundNanos == 0 ? Double.MAX_VALUE : (double) roundRows / roundNanos;
+        boolean tooSlow = targetNanos > 0 && roundNanos / roundBatches > targetNanos;
+        if (tooSlow) {
+            growing = false;
+        } else if (lastThroughput > 0 && throughput < lastThroughput * (1 - TOLERANCE)) {
+            growing = !growing;
+        }
+        lastThroughput = throughput;
+        roundBatches = 0;
+        roundRows = 0;
+        roundNanos = 0;
+        rows = clamp((int) (growing ? rows * STEP : rows / STEP));
+        if (!tooSlow && (rows == minRows || rows == maxRows)) {
+            // probe the other way from a bound
+            growing = rows == minRows;
+        }
+    }
+
+    private int clamp(int rows) {
+        return Math.max(minRows, Math.min(maxRows, rows));
+    }
+}
@@ -0,0 +1,148 @@
+package com.nott;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reads and writes the batches of one table at the same time.
+ * <p>
+ * The calling thread runs the reader, which fills a bounded queue. Writer threads drain it.
+ * A full queue blocks the reader, so a slow target holds back the source instead of
+ * piling up batches in memory. Time the reader waits on a full queue is recorded as
+ * read stall, time the writers wait on an empty queue as write stall.
+ * <p>
+ * The first writer uses the target connection the table already holds. Extra writers
+ * only start if they get a target connection from the {@link ConnectionBudget} right away.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Slf4j
+public class BatchPipeline<T> {
+
+    private static final long POLL_MILLIS = 100;
+
+    private final BlockingQueue<T> queue;
+    private final int writers;
+    private final ConnectionBudget budget;
+    private final MigrationProgress progress;
+
+    private final AtomicReference<Exception> writeError = new AtomicReference<>();
+    private volatile boolean readDone;
+
+    public BatchPipeline(int queueDepth, int writers, ConnectionBudget budget, MigrationProgress progress) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueDepth));
+        this.writers = Math.max(1, writers);
+        this.budget = budget;
+        this.progress = progress;
+    }
+
+    public void run(Reader<T> reader, Writer<T> writer) throws Exception {
+        int extraWriters = 0;
+        while (extraWriters < writers - 1 && budget.tryAcquireTarget()) {
+            extraWriters++;
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(1 + extraWriters,
+                r -> new Thread(r, "m2p-writer-" + progress.getTableName() + "-" + threadIndex.incrementAndGet()));
+        List<Future<?>> futures = new ArrayList<>();
+        progress.addQueue(queue);
+        try {
+            for (int i = 0; i <= extraWriters; i++) {
+                futures.add(executor.submit(() -> {
+                    drain(writer);
+                    return null;
+                }));
+            }
+            Exception readError = null;
+            try {
+                reader.read(this::put);
+            } catch (Exception e) {
+                readError = e;
+            } finally {
+                readDone = true;
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // kept in writeError
+                }
+            }
+            if (writeError.get() != null) {
+                throw writeError.get();
+            }
+            if (readError != null) {
+                throw readError;
+            }
+        } finally {
+            progress.removeQueue(queue);
+            executor.shutdownNow();
+            for (int i = 0; i < extraWriters; i++) {
+                budget.releaseTarget();
+            }
+        }
+    }
+
+    private void put(T batch) throws Exception {
+        long start = System.nanoTime();
+        while (!queue.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (writeError.get() != null) {
+                throw new IllegalStateException("writer of table " + progress.getTableName() + " failed");
+            }
+        }
+        progress.addReadStall(System.nanoTime() - start);
+    }
+
+    private void drain(Writer<T> writer) throws Exception {
+        while (writeError.get() == null) {
+            long start = System.nanoTime();
+            boolean reading = !readDone;
+            T batch = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (reading) {
+                progress.addWriteStall(System.nanoTime() - start);
+            }
+            if (batch == null) {
+                if (readDone && queue.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                writer.write(batch);
+            } catch (Exception e) {
+                log.error("write table {} error : {}", progress.getTableName(), e.getMessage(), e);
+                progress.addError();
+                writeError.compareAndSet(null, e);
+                throw e;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Reader<T> {
+        void read(Sink<T> sink) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface Sink<T> {
+        void accept(T batch) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface Writer<T> {
+        void write(T batch) throws Exception;
+    }
+}
@@ -0,0 +1,241 @@
+package com.nott;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.TypeReference;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers how far every table got, so an interrupted migration can resume.
+ * <p>
+ * For each key range of a table the journal keeps the key of the last row of the
+ * last committed batch. A resumed migration seeks past that key, so nothing is read
+ * or inserted twice. The journal is a json file that is replaced atomically and
+ * fsynced at most every {@code syncIntervalMillis}, so a crash loses at most that
+ * much progress, which the resume then reads again.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Slf4j
+public class CheckpointJournal {
+
+    private final Path file;
+    private final long syncIntervalMillis;
+    private final Map<String, TableCheckpoint> tables;
+    private long lastSync = System.currentTimeMillis();
+
+    private CheckpointJournal(Path file, long syncIntervalMillis, Map<String, TableCheckpoint> tables) {
+        this.file = file;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.tables = tables;
+    }
+
+    /**
+     * @param resume false to start over, forgetting what the journal holds
+     */
+    public static CheckpointJournal open(String file, boolean resume, long syncIntervalMillis) throws IOException {
+        Path path = Paths.get(file).toAbsolutePath();
+        Map<String, TableCheckpoint> tables = new LinkedHashMap<>();
+        if (resume && Files.exists(path)) {
+            String json = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            tables = JSON.parseObject(json, new TypeReference<LinkedHashMap<String, TableCheckpoint>>() {
+            });
+            log.info("resuming from checkpoint journal {}, {} tables", path, tables.size());
+        }
+        CheckpointJournal journal = new CheckpointJournal(path, syncIntervalMillis, tables);
+        journal.sync();
+        return journal;
+    }
+
+    public synchronized boolean isDone(String table) {
+        TableCheckpoint checkpoint = tables.get(table);
+        return checkpoint != null && checkpoint.isDone();
+    }
+
+    /**
+     * a table that only has the watermark of a delta pass wasn't copied yet
+     */
+    public synchronized boolean isStarted(String table) {
+        TableCheckpoint checkpoint = tables.get(table);
+        return checkpoint != null && (checkpoint.isStarted() || checkpoint.isDone()
+                || !checkpoint.getRanges().isEmpty());
+    }
+
+    public synchronized boolean isDone(String table, int range) {
+        RangeCheckpoint checkpoint = getRange(table, range);
+        return checkpoint != null && checkpoint.isDone();
+    }
+
+    /**
+     * @return split points the table was cut on when it was started, null if it wasn't split
+     */
+    public synchronized List<Object> getSplitPoints(String table) {
+        TableCheckpoint checkpoint = tables.get(table);
+        return checkpoint == null || checkpoint.getSplitPoints() == null ? null
+                : decode(checkpoint.getSplitPoints());
+    }
+
+    /**
+     * @return the key to resume the range after, null to read it from the start
+     */
+    public synchronized Object[] getLastKey(String table, int range) {
+        RangeCheckpoint checkpoint = getRange(table, range);
+        return checkpoint == null || checkpoint.getLastKey() == null ? null
+                : decode(checkpoint.getLastKey()).toArray();
+    }
+
+    /**
+     * @return the newest change the delta passes of the table copied, null if none ran
+     */
+    public synchronized Object getWatermark(String table) {
+        TableCheckpoint checkpoint = tables.get(table);
+        return checkpoint == null || checkpoint.getWatermark() == null ? null
+                : decode(checkpoint.getWatermark()).get(0);
+    }
+
+    public synchronized void setWatermark(String table, Object watermark) {
+        tables.computeIfAbsent(table, t -> new TableCheckpoint())
+                .setWatermark(watermark == null ? null : encode(new Object[]{watermark}));
+    }
+
+    public synchronized void start(String table, List<Object> splitPoints) {
+        TableCheckpoint checkpoint = restart(table);
+        checkpoint.setStarted(true);
+        checkpoint.setSplitPoints(splitPoints == null ? null : encode(splitPoints.toArray()));
+    }
+
+    /**
+     * records a committed batch, {@code lastKey} is null when the table is read without a key
+     */
+    public synchronized void commit(String table, int range, Object[] lastKey, long rows) {
+        RangeCheckpoint checkpoint = tables.computeIfAbsent(table, t -> new TableCheckpoint())
+                .getRanges().computeIfAbsent(range, r -> new RangeCheckpoint());
+        if (lastKey != null) {
+            checkpoint.setLastKey(encode(lastKey));
+        }
+        checkpoint.setRows(checkpoint.getRows() + rows);
+    }
+
+    public synchronized void finish(String table, int range) {
+        tables.computeIfAbsent(table, t -> new TableCheckpoint())
+                .getRanges().computeIfAbsent(range, r -> new RangeCheckpoint()).setDone(true);
+    }
+
+    public synchronized void finish(String table) throws IOException {
+        tables.computeIfAbsent(table, t -> new TableCheckpoint()).setDone(true);
+        sync();
+    }
+
+    /**
+     * drops the progress of the table, the watermark stays
+     */
+    public synchronized void forget(String table) {
+        TableCheckpoint checkpoint = restart(table);
+        if (checkpoint.getWatermark() == null) {
+            tables.remove(table);
+        }
+    }
+
+    public synchronized void syncIfDue() throws IOException {
+        if (System.currentTimeMillis() - lastSync >= syncIntervalMillis) {
+            sync();
+        }
+    }
+
+    public synchronized void sync() throws IOException {
+        byte[] json = JSON.toJSONString(tables, SerializerFeature.PrettyFormat).getBytes(StandardCharsets.UTF_8);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(json);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lastSync = System.currentTimeMillis();
+    }
+
+    private TableCheckpoint restart(String table) {
+        TableCheckpoint previous = tables.get(table);
+        TableCheckpoint checkpoint = new TableCheckpoint();
+        if (previous != null) {
+            checkpoint.setWatermark(previous.getWatermark());
+        }
+        tables.put(table, checkpoint);
+        return checkpoint;
+    }
+
+    private RangeCheckpoint getRange(String table, int range) {
+        TableCheckpoint checkpoint = tables.get(table);
+        return checkpoint == null ? null : checkpoint.getRanges().get(range);
+    }
+
+    /**
+     * numbers and strings are kept as they are, binary keys as base64,
+     * dates and times as their ISO text which MySQL compares against the column
+     */
+    private static List<Object> encode(Object[] values) {
+        List<Object> encoded = new ArrayList<>();
+        for (Object value : values) {
+            if (value == null || value instanceof Number || value instanceof String || value instanceof Boolean) {
+                encoded.add(value);
+            } else if (value instanceof byte[]) {
+                JSONObject bytes = new JSONObject();
+                bytes.put("base64", Base64.getEncoder().encodeToString((byte[]) value));
+                encoded.add(bytes);
+            } else {
+                encoded.add(value.toString());
+            }
+        }
+        return encoded;
+    }
+
+    private static List<Object> decode(List<Object> values) {
+        List<Object> decoded = new ArrayList<>();
+        for (Object value : values) {
+            if (value instanceof Map) {
+                decoded.add(Base64.getDecoder().decode((String) ((Map<?, ?>) value).get("base64")));
+            } else {
+                decoded.add(value);
+            }
+        }
+        return decoded;
+    }
+
+    @Data
+    public static class TableCheckpoint {
+        private boolean started;
+        private boolean done;
+        private List<Object> splitPoints;
+        private Map<Integer, RangeCheckpoint> ranges = new LinkedHashMap<>();
+        private List<Object> watermark;
+    }
+
+    @Data
+    public static class RangeCheckpoint {
+        private List<Object> lastKey;
+        private long rows;
+        private boolean done;
+    }
+}
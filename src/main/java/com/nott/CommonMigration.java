@@ -4,8 +4,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DuplicateKeyException;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
 
 /**
  * @author Nott
@@ -17,48 +32,545 @@ abstract public class CommonMigration {
 
     private static Logger LOG = LoggerFactory.getLogger(CommonMigration.class);
 
-    public void migrate(String sourceTab, String targetTab) throws Exception {
+    private MigrationProgress progress;
 
-        int totalRecords = getTotalRecords();
+    private AdaptiveBatchSizer batchSizer;
+
+    /**
+     * name of the table in the checkpoint journal
+     */
+    private String journalName;
+
+    /**
+     * index of the key range this migration reads, 0 when the table isn't split
+     */
+    private int rangeIndex;
 
-        int stepLength = getStepLength();
+    /**
+     * true while a delta pass runs, which has nothing to journal but its watermark
+     */
+    private boolean copyingChanges;
+
+    /**
+     * true when the journal had the table started by an earlier run
+     */
+    private boolean resuming;
+
+    public void migrate(String sourceTab, String targetTab) throws Exception {
         LOG.info("start to migrate data from source db to target db");
         LOG.info("source table:{}", sourceTab);
         LOG.info("target table:{}", targetTab);
+        CheckpointJournal journal = getJournal();
+        this.journalName = sourceTab;
+        if (journal != null && journal.isDone(sourceTab)) {
+            LOG.info("table {} already migrated, skip", sourceTab);
+            return;
+        }
+        ReadMode readMode = getReadMode();
+        if (readMode == ReadMode.KEYSET && !hasUsableKey()) {
+            LOG.info("table {} has no usable key, fallback to streaming cursor", sourceTab);
+            readMode = ReadMode.STREAM;
+        }
+        if (journal != null && journal.isStarted(sourceTab) && readMode != ReadMode.KEYSET) {
+            LOG.warn("table {} is read without a key and can't resume where it stopped, copy it again", sourceTab);
+            truncateTarget();
+            journal.forget(sourceTab);
+        }
+        this.resuming = journal != null && journal.isStarted(sourceTab);
+        List<? extends CommonMigration> parts = new ArrayList<>();
+        if (readMode == ReadMode.KEYSET) {
+            List<Object> splitPoints = null;
+            if (journal != null && journal.isStarted(sourceTab)) {
+                // keep the ranges the table was started with
+                splitPoints = journal.getSplitPoints(sourceTab);
+                splitPoints = splitPoints == null ? new ArrayList<>() : splitPoints;
+            }
+            parts = split(splitPoints);
+        }
+        if (journal != null && !journal.isStarted(sourceTab)) {
+            journal.start(sourceTab, parts.size() > 1 ? parts.stream().skip(1)
+                    .map(part -> part.getRange().getLower()).collect(Collectors.toList()) : null);
+            // on disk before a row is written, so a resume knows which rows to clear
+            journal.sync();
+        }
+        MigrationMetrics metrics = getMetrics();
+        int ranges = Math.max(1, parts.size());
+        this.progress = metrics == null ? new MigrationProgress(sourceTab, getTotalRecords(), ranges)
+                : metrics.start(sourceTab, getTotalRecords(), ranges);
+        this.batchSizer = createBatchSizer();
+        progress.setBatchSize(batchSizer.getBatchSize());
+        try {
+            if (parts.size() > 1) {
+                migrateParts(parts);
+                LOG.info("table {} moved {} records in {} ranges, {} rows/s", sourceTab, progress.getMoved(),
+                        parts.size(), progress.getRowsPerSecond());
+            } else {
+                switch (readMode) {
+                    case KEYSET:
+                        migrateByKeyset();
+                        break;
+                    case STREAM:
+                        migrateByStream();
+                        break;
+                    default:
+                        migrateByOffset();
+                }
+            }
+            if (journal != null) {
+                for (int i = 0; i < parts.size(); i++) {
+                    if (!journal.isDone(sourceTab, i)) {
+                        throw new IllegalStateException("table " + sourceTab + " range " + i + " didn't finish");
+                    }
+                }
+                journal.finish(sourceTab);
+            }
+            // the post-load statements move the table on to DONE
+            progress.finish(hasPostLoad() ? MigrationProgress.Phase.LOADED : MigrationProgress.Phase.DONE);
+        } catch (CancellationException e) {
+            progress.finish(MigrationProgress.Phase.CANCELLED);
+            throw e;
+        } catch (Exception e) {
+            progress.addError();
+            progress.finish(MigrationProgress.Phase.FAILED);
+            throw e;
+        }
+    }
+
+    /**
+     * Copies the rows changed since the watermark, in the order of the delta column.
+     *
+     * @param watermark the newest change already copied, null for every row with a change time
+     * @return the newest change copied, {@code watermark} when nothing changed
+     */
+    public Object migrateChanges(String sourceTab, Object watermark) throws Exception {
+        this.journalName = sourceTab;
+        this.copyingChanges = true;
+        MigrationMetrics metrics = getMetrics();
+        long changed = getChangedRecords(watermark);
+        LOG.info("table {} has {} rows changed after {}", sourceTab, changed, watermark);
+        this.progress = metrics == null ? new MigrationProgress(sourceTab, changed, 1)
+                : metrics.start(sourceTab, changed, 1);
+        this.batchSizer = createBatchSizer();
+        progress.setBatchSize(batchSizer.getBatchSize());
+        Object[] newest = {watermark};
+        try {
+            runPipeline(sink -> {
+                long seq = 0;
+                Object[] lastKey = null;
+                while (true) {
+                    int batchSize = batchSizer.getBatchSize();
+                    long start = System.nanoTime();
+                    RowBatch rows = queryChangedAfter(watermark, lastKey, batchSize);
+                    progress.recordRead(System.nanoTime() - start);
+                    if (rows.isEmpty()) {
+                        rows.recycle();
+                        break;
+                    }
+                    // the batch belongs to the writers once it is handed over
+                    int read = rows.size();
+                    lastKey = getChangeKey(rows, read - 1);
+                    newest[0] = lastKey[0];
+                    checkpoint(read);
+                    sink.accept(new MigrationBatch(seq++, rows, null));
+                    if (read < batchSize) {
+                        break;
+                    }
+                }
+            });
+            progress.finish(MigrationProgress.Phase.DONE);
+        } catch (CancellationException e) {
+            progress.finish(MigrationProgress.Phase.CANCELLED);
+            throw e;
+        } catch (Exception e) {
+            progress.addError();
+            progress.finish(MigrationProgress.Phase.FAILED);
+            throw e;
+        }
+        return newest[0];
+    }
+
+    /**
+     * Runs the key ranges of a split table. This thread works through the ranges with the
+     * connections it already holds, helpers join in as the connection budget allows.
+     */
+    private void migrateParts(List<? extends CommonMigration> parts) throws Exception {
+        Queue<CommonMigration> queue = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < parts.size(); i++) {
+            CommonMigration part = parts.get(i);
+            part.progress = this.progress;
+            part.batchSizer = this.batchSizer;
+            part.journalName = this.journalName;
+            part.rangeIndex = i;
+            part.resuming = this.resuming;
+            queue.add(part);
+        }
+        AtomicReference<Exception> error = new AtomicReference<>();
+        int helpers = Math.min(getRangeWorkers(), parts.size()) - 1;
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = helpers > 0 ? Executors.newFixedThreadPool(helpers,
+                r -> new Thread(r, "m2p-range-" + journalName + "-" + threadIndex.incrementAndGet())) : null;
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < helpers; i++) {
+                futures.add(executor.submit(() -> {
+                    ConnectionBudget budget = getConnectionBudget();
+                    while (!queue.isEmpty()) {
+                        if (budget.tryAcquire(1, TimeUnit.SECONDS)) {
+                            try {
+                                drain(queue, error);
+                            } finally {
+                                budget.release();
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            drain(queue, error);
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        if (error.get() != null) {
+            throw error.get();
+        }
+    }
+
+    private static void drain(Queue<CommonMigration> queue, AtomicReference<Exception> error) {
+        CommonMigration part;
+        while ((part = queue.poll()) != null) {
+            try {
+                part.migrateByKeyset();
+            } catch (CancellationException e) {
+                error.compareAndSet(null, e);
+                queue.clear();
+            } catch (Exception e) {
+                LOG.error("migrate range {} error : {}", part.rangeIndex, e.getMessage(), e);
+                error.compareAndSet(null, e);
+                queue.clear();
+            }
+        }
+    }
+
+    private void migrateByOffset() throws Exception {
+        int totalRecords = getTotalRecords();
+
         String querySql = getQuerySql();
         LOG.info("starting to query,sql:{}", querySql);
-        for (int offset = 0; offset < totalRecords; offset = offset + stepLength) {
-            List<Map<String, Object>> rows = queryForList(querySql, offset, stepLength);
-            // 说明发生错误
-            if (rows.isEmpty()) {
-                break;
+        runPipeline(sink -> {
+            long seq = 0;
+            int offset = getInitialOffset();
+            while (offset < totalRecords) {
+                long start = System.nanoTime();
+                RowBatch rows = queryForList(querySql, offset, batchSizer.getBatchSize());
+                progress.recordRead(System.nanoTime() - start);
+                // read errors are thrown, an empty page is the end of the table
+                if (rows.isEmpty()) {
+                    rows.recycle();
+                    break;
+                }
+                offset += rows.size();
+                checkpoint(rows.size());
+                sink.accept(new MigrationBatch(seq++, rows, null));
             }
-            int count = offset;
-            try {
-                batchInsert(rows);
-            } catch (DuplicateKeyException e) {
-                count--;
-                LOG.info("duplicate key,continue to insert");
+        });
+    }
+
+    private void migrateByKeyset() throws Exception {
+        CheckpointJournal journal = getJournal();
+        if (journal != null && journal.isDone(journalName, rangeIndex)) {
+            LOG.info("table {} range {} already migrated, skip", journalName, rangeIndex);
+            return;
+        }
+        Object[] startKey = journal == null ? null : journal.getLastKey(journalName, rangeIndex);
+        if (startKey != null) {
+            LOG.info("table {} range {} resumes after key {}", journalName, rangeIndex, Arrays.toString(startKey));
+            discardAfter(startKey);
+        } else if (resuming) {
+            // rows may have been written before the range's first checkpoint was synced
+            LOG.info("table {} range {} resumes from its start", journalName, rangeIndex);
+            discardAfter(null);
+        }
+        LOG.info("starting to query,sql:{}", getKeysetQuerySql(false));
+        runPipeline(sink -> {
+            long seq = 0;
+            Object[] lastKey = startKey;
+            while (true) {
+                int batchSize = batchSizer.getBatchSize();
+                long start = System.nanoTime();
+                RowBatch rows = queryAfter(lastKey, batchSize);
+                progress.recordRead(System.nanoTime() - start);
+                if (rows.isEmpty()) {
+                    rows.recycle();
+                    break;
+                }
+                // the batch belongs to the writers once it is handed over
+                int read = rows.size();
+                lastKey = getKey(rows, read - 1);
+                checkpoint(read);
+                sink.accept(new MigrationBatch(seq++, rows, lastKey));
+                if (read < batchSize) {
+                    break;
+                }
+            }
+        });
+        // only reached when every batch was read and written, a failed range resumes from its last key
+        if (journal != null) {
+            journal.finish(journalName, rangeIndex);
+            journal.syncIfDue();
+        }
+    }
+
+    private void migrateByStream() throws Exception {
+        LOG.info("starting to query,sql:{}", getStreamQuerySql());
+        runPipeline(sink -> {
+            long[] seq = {0};
+            // a batch is read from the time the previous one was handed over
+            long[] start = {System.nanoTime()};
+            streamRows(batchSizer::getBatchSize, rows -> {
+                progress.recordRead(System.nanoTime() - start[0]);
+                checkpoint(rows.size());
+                sink.accept(new MigrationBatch(seq[0]++, rows, null));
+                start[0] = System.nanoTime();
+            });
+        });
+    }
+
+    private void runPipeline(BatchPipeline.Reader<MigrationBatch> reader) throws Exception {
+        CommitOrder commitOrder = new CommitOrder();
+        new BatchPipeline<MigrationBatch>(getQueueDepth(), getWriterThreads(), getConnectionBudget(),
+                progress).run(reader, batch -> {
+            long start = System.nanoTime();
+            int rows = write(batch.getRows());
+            long nanos = System.nanoTime() - start;
+            long bytes = batch.getRows().estimateBytes();
+            progress.recordWrite(nanos);
+            progress.addBytes(bytes);
+            batchSizer.record(batch.getRows().size(), bytes, nanos);
+            progress.setBatchSize(batchSizer.getBatchSize());
+            // the journal only needs the key, which is copied out of the batch
+            batch.getRows().recycle();
+            report(rows);
+            commitOrder.commit(batch, rows);
+        });
+        LOG.info("table {} range {} done, read stall {} ms, write stall {} ms", progress.getTableName(), rangeIndex,
+                progress.getReadStallMillis(), progress.getWriteStallMillis());
+    }
+
+    /**
+     * holds the reader while the job is paused or over its throttle
+     */
+    private void checkpoint(int rows) throws InterruptedException {
+        JobControl control = getJobControl();
+        if (control != null) {
+            control.checkpoint(rows);
+        }
+    }
+
+    private int write(RowBatch rows) throws Exception {
+        try {
+            batchInsert(rows);
+            return rows.size();
+        } catch (DuplicateKeyException e) {
+            progress.addError();
+            int inserted = insertRowByRow(rows);
+            LOG.info("duplicate key,inserted {} of {} rows one by one", inserted, rows.size());
+            return inserted;
+        }
+    }
+
+    private void report(int rows) {
+        long moved = progress.add(rangeIndex, rows);
+        LOG.info("table {} moved {}/{} records, {} rows/s", progress.getTableName(), moved,
+                progress.getTotalRecords(), progress.getRowsPerSecond());
+    }
+
+    /**
+     * Writers may finish batches out of order. The journal only moves past a batch once
+     * every batch read before it is committed too, so a resume never skips rows.
+     */
+    private class CommitOrder {
+
+        private final Map<Long, MigrationBatch> committed = new HashMap<>();
+        private long rows;
+        private long next;
+
+        synchronized void commit(MigrationBatch batch, int batchRows) throws IOException {
+            CheckpointJournal journal = getJournal();
+            if (journal == null || copyingChanges) {
+                return;
+            }
+            committed.put(batch.getSeq(), batch);
+            rows += batchRows;
+            MigrationBatch last = null;
+            while (committed.containsKey(next)) {
+                last = committed.remove(next++);
+            }
+            if (last != null) {
+                journal.commit(journalName, rangeIndex, last.getLastKey(), rows);
+                rows = 0;
+                journal.syncIfDue();
             }
-            LOG.info("moved {} records", count);
         }
     }
 
+    protected boolean isCopyingChanges() {
+        return copyingChanges;
+    }
+
     protected abstract void closeConnect();
 
-    abstract protected List<Map<String, Object>> queryForList(String querySql, int offset, int stepLength);
+    abstract protected RowBatch queryForList(String querySql, int offset, int stepLength);
 
     abstract protected String getQuerySql();
 
-    abstract protected void batchInsert(List<Map<String, Object>> collocMaps) throws Exception;
+    /**
+     * @param afterKey false for the first page, which has no key to seek from
+     */
+    abstract protected String getKeysetQuerySql(boolean afterKey);
+
+    /**
+     * @param lastKey key of the last row already read, null for the first page
+     * @return an empty batch only past the last row, a failed read throws
+     */
+    abstract protected RowBatch queryAfter(Object[] lastKey, int stepLength);
+
+    abstract protected Object[] getKey(RowBatch rows, int row);
+
+    abstract protected String getStreamQuerySql();
+
+    /**
+     * reads the whole table with one cursor, handing batches of {@code batchSize} rows to the handler
+     *
+     * @param batchSize asked again before every batch
+     */
+    abstract protected void streamRows(IntSupplier batchSize, RowsHandler handler) throws Exception;
+
+    abstract protected void batchInsert(RowBatch rows) throws Exception;
+
+    /**
+     * inserts the rows of a batch that failed on a duplicate key one at a time, skipping the duplicates
+     *
+     * @return rows inserted
+     */
+    abstract protected int insertRowByRow(RowBatch rows);
+
+    abstract protected void truncateTarget();
+
+    /**
+     * @param watermark the newest change already copied, null for every row with a change time
+     * @param lastKey   change key of the last row already read, null for the first page
+     * @return the next rows changed after the watermark, ordered by their change key
+     */
+    abstract protected RowBatch queryChangedAfter(Object watermark, Object[] lastKey, int stepLength);
+
+    /**
+     * @return the change time of the row followed by its key
+     */
+    abstract protected Object[] getChangeKey(RowBatch rows, int row);
+
+    abstract protected long getChangedRecords(Object watermark);
+
+    /**
+     * drops the rows of this range past {@code lastKey} that were written but not checkpointed
+     *
+     * @param lastKey null to drop every row of the range
+     */
+    protected void discardAfter(Object[] lastKey) {
+    }
+
+    /**
+     * @return true when statements run on the table once its rows are in, see {@link PostLoadBuilder}
+     */
+    protected boolean hasPostLoad() {
+        return false;
+    }
 
+    /**
+     * @param splitPoints the points to split on, null to pick them, empty to not split
+     * @return the key ranges of this table, each migrated by {@link ReadMode#KEYSET} on its own,
+     * a single element or an empty list when the table isn't split
+     */
+    abstract protected List<? extends CommonMigration> split(List<Object> splitPoints);
+
+    /**
+     * @return the slice of the table this migration reads, null for the whole table
+     */
+    protected KeyRange getRange() {
+        return null;
+    }
+
+    protected CheckpointJournal getJournal() {
+        return null;
+    }
+
+    /**
+     * @return where the progress of the table is published, null to keep it to the log
+     */
+    protected MigrationMetrics getMetrics() {
+        return null;
+    }
+
+    /**
+     * @return the switches of the job running this migration, null when it runs outside a job
+     */
+    protected JobControl getJobControl() {
+        return null;
+    }
+
+    protected ReadMode getReadMode() {
+        return ReadMode.OFFSET;
+    }
+
+    protected boolean hasUsableKey() {
+        return false;
+    }
+
+    protected int getRangeWorkers() {
+        return 1;
+    }
+
+    protected ConnectionBudget getConnectionBudget() {
+        return ConnectionBudget.unlimited();
+    }
+
+    /**
+     * rows of the first batches
+     */
     protected int getStepLength() {
         return 100;
     }
 
+    /**
+     * @return the sizer of the batches of the table, shared by its ranges
+     */
+    protected AdaptiveBatchSizer createBatchSizer() {
+        return AdaptiveBatchSizer.fixed(getStepLength());
+    }
+
+    /**
+     * batches read ahead of the writers
+     */
+    protected int getQueueDepth() {
+        return 4;
+    }
+
+    protected int getWriterThreads() {
+        return 1;
+    }
+
     protected int getInitialOffset() {
         return 0;
     }
 
     abstract protected int getTotalRecords();
+
+    @FunctionalInterface
+    protected interface RowsHandler {
+        void handle(RowBatch rows) throws Exception;
+    }
 }
@@ -0,0 +1,72 @@
+package com.nott;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connections a migration may hold on the source and the target at the same time.
+ * Every worker that reads and writes a table, or a range of it, holds one permit
+ * on each side.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+public class ConnectionBudget {
+
+    private final Semaphore source;
+    private final Semaphore target;
+
+    public ConnectionBudget(int sourceLimit, int targetLimit) {
+        this.source = new Semaphore(sourceLimit);
+        this.target = new Semaphore(targetLimit);
+    }
+
+    public static ConnectionBudget unlimited() {
+        return new ConnectionBudget(Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    public void acquire() throws InterruptedException {
+        source.acquire();
+        try {
+            target.acquire();
+        } catch (InterruptedException e) {
+            source.release();
+            throw e;
+        }
+    }
+
+    public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!source.tryAcquire(timeout, unit)) {
+            return false;
+        }
+        if (!target.tryAcquire(timeout, unit)) {
+            source.release();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * a target connection alone, for work that doesn't read the source
+     */
+    public void acquireTarget() throws InterruptedException {
+        target.acquire();
+    }
+
+    /**
+     * a target connection for an extra writer, without waiting
+     */
+    public boolean tryAcquireTarget() {
+        return target.tryAcquire();
+    }
+
+    public void releaseTarget() {
+        target.release();
+    }
+
+    public void release() {
+        target.release();
+        source.release();
+    }
+}
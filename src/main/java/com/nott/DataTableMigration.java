@@ -1,14 +1,38 @@
 package com.nott;
 
-import com.nott.utils.MigrationUtils;
+import com.nott.config.MigrationProperties;
+import com.nott.dump.DumpWriter;
+import com.nott.dump.SegmentWriter;
+import com.nott.schema.ColumnSchema;
+import com.nott.schema.SchemaSnapshot;
+import com.nott.schema.TableSchema;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.DataAccessException;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.util.Assert;
 
 import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.IntSupplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -24,29 +48,263 @@ public class DataTableMigration extends CommonMigration {
     private final JdbcTemplate sourceJdbc;
     private final String tableName;
     private final String primaryKey;
+    private final String[] keyColumns;
     private final String[] columnNamesInSourceDB;
     private final String[] columnNamesInTargetDB;
 
     private final Map<String, String> columnMappings;
+    private final MigrationProperties properties;
+    private final PgCopyWriter copyWriter;
+    /**
+     * the transactions of the fast load writes, null unless fast load
+     */
+    private final DataSourceTransactionManager loadTransactions;
+
+    /**
+     * the source columns selected for the target columns, in insert order, followed by
+     * the key columns and the delta column no target column is mapped from
+     */
+    private final String[] selectColumns;
+    private final String selectList;
+
+    /**
+     * large values streamed to the target instead of read with their rows
+     */
+    private final LobColumns lobColumns;
+
+    /**
+     * position of every key column in a row
+     */
+    private final int[] keyIndexes;
+    private final RowConverter rowConverter;
+
+    /**
+     * batches of this table, shared by its key ranges
+     */
+    private final RowBatchPool batchPool;
+
+    /**
+     * source column holding when a row last changed, null when the table has none
+     */
+    private final String deltaColumn;
+
+    /**
+     * position of the delta column in a row
+     */
+    private final int deltaIndex;
+
+    /**
+     * true when the delta column is a date or time, which gets the overlap window
+     */
+    private final boolean deltaTemporal;
+
+    /**
+     * the slice of the table this migration reads, null for the whole table
+     */
+    private final KeyRange range;
+    private ConnectionBudget connectionBudget = ConnectionBudget.unlimited();
+
+    /**
+     * where an export writes the rows instead of the target, null when migrating
+     */
+    private SegmentWriter segments;
+    private boolean postLoad;
+    private CheckpointJournal journal;
+    private MigrationMetrics metrics;
+    private JobControl jobControl;
+    private Integer totalRecords;
 
     public DataTableMigration(DataSource sourceDataSource, String tableName, DataSource targetDataSource) throws SQLException {
         this(sourceDataSource, targetDataSource, tableName, new HashMap<>());
     }
 
+    public DataTableMigration(DataSource sourceDataSource, String tableName, DataSource targetDataSource,
+                              MigrationProperties properties) throws SQLException {
+        this(sourceDataSource, targetDataSource, tableName, new HashMap<>(), properties);
+    }
+
     public DataTableMigration(DataSource sourceDataSource, DataSource targetDataSource, String tableName,
                               Map<String, String> columnMappings)
             throws SQLException {
-        this.tableName = tableName.toLowerCase();
-        this.sourceJdbc = new JdbcTemplate(sourceDataSource);
-        this.targetJdbc = new JdbcTemplate(targetDataSource);
-        this.primaryKey = MigrationUtils.getPrimaryKeyByTableName(sourceDataSource.getConnection(), this.tableName);
-        this.columnNamesInSourceDB = MigrationUtils.getColumnsByTableName(sourceDataSource.getConnection(), this.tableName);
-        Assert.isTrue(this.columnNamesInSourceDB != null && this.columnNamesInSourceDB.length > 0,
-                "can't find column infor from source db for the table " + this.tableName);
-        this.columnNamesInTargetDB = MigrationUtils.getColumnsByTableName(targetDataSource.getConnection(), this.tableName);
-        Assert.isTrue(this.columnNamesInTargetDB != null && this.columnNamesInTargetDB.length > 0,
+        this(sourceDataSource, targetDataSource, tableName, columnMappings, new MigrationProperties());
+    }
+
+    public DataTableMigration(DataSource sourceDataSource, DataSource targetDataSource, String tableName,
+                              Map<String, String> columnMappings, MigrationProperties properties)
+            throws SQLException {
+        this(sourceDataSource, targetDataSource, SchemaSnapshot.load(sourceDataSource, tableName).getTable(tableName),
+                SchemaSnapshot.load(targetDataSource, tableName).getTable(tableName), columnMappings, properties);
+    }
+
+    /**
+     * @param targetDataSource null for an export, which takes the column types from {@code targetTable}
+     * @param sourceTable      the table in a {@link SchemaSnapshot} of the source
+     * @param targetTable      the table in a {@link SchemaSnapshot} of the target
+     */
+    public DataTableMigration(DataSource sourceDataSource, DataSource targetDataSource, TableSchema sourceTable,
+                              TableSchema targetTable, Map<String, String> columnMappings,
+                              MigrationProperties properties) {
+        Assert.isTrue(sourceTable != null && !sourceTable.getColumns().isEmpty(),
+                "can't find column infor from source db for the table " + (targetTable == null ? null
+                        : targetTable.getName()));
+        this.tableName = sourceTable.getName().toLowerCase();
+        Assert.isTrue(targetTable != null && !targetTable.getColumns().isEmpty(),
                 "can't find column infor from target db for the table " + this.tableName);
+        this.sourceJdbc = new JdbcTemplate(sourceDataSource);
+        this.targetJdbc = targetDataSource == null ? null : new JdbcTemplate(targetDataSource);
+        this.primaryKey = String.join(",", sourceTable.getPrimaryKey());
+        this.keyColumns = StringUtils.isEmpty(this.primaryKey) ? new String[0] : this.primaryKey.split(",");
+        this.columnNamesInSourceDB = sourceTable.getColumnNames();
+        this.columnNamesInTargetDB = targetTable.getColumnNames();
         this.columnMappings = columnMappings;
+        this.properties = properties;
+        this.copyWriter = new PgCopyWriter(this.targetJdbc, this.tableName, this.columnNamesInTargetDB);
+        this.loadTransactions = properties.isFastLoad() && targetDataSource != null
+                ? new DataSourceTransactionManager(targetDataSource) : null;
+        this.range = null;
+
+        List<String> selectColumns = new ArrayList<>();
+        for (String targetColumn : this.columnNamesInTargetDB) {
+            String sourceColumn = columnMappings.getOrDefault(targetColumn, targetColumn);
+            // a target column without a source column is filled with null
+            selectColumns.add(indexOfIgnoreCase(this.columnNamesInSourceDB, sourceColumn) < 0 ? "null" : sourceColumn);
+        }
+        this.keyIndexes = new int[this.keyColumns.length];
+        for (int i = 0; i < this.keyColumns.length; i++) {
+            int index = indexOfIgnoreCase(selectColumns.toArray(new String[0]), this.keyColumns[i]);
+            if (index < 0) {
+                index = selectColumns.size();
+                selectColumns.add(this.keyColumns[i]);
+            }
+            this.keyIndexes[i] = index;
+        }
+        this.copyWriter.setStripNul(properties.isCopyStripNul());
+        this.copyWriter.setKeyIndexes(this.keyIndexes);
+        if (properties.getWriteMode() == WriteMode.COPY) {
+            log.info("table {} copy sql: {}", this.tableName, this.copyWriter.getCopySql());
+        } else if (properties.getWriteMode() == WriteMode.BATCH) {
+            log.info("table {} insert sql: {}", this.tableName, getInsertSQL());
+        }
+        ColumnSchema deltaColumn = StringUtils.isEmpty(properties.getDeltaColumnOf(this.tableName)) ? null
+                : sourceTable.getColumn(properties.getDeltaColumnOf(this.tableName));
+        if (deltaColumn == null && StringUtils.isNotEmpty(properties.getDeltaColumnOf(this.tableName))) {
+            log.warn("table {} has no delta column {}, delta passes skip it", this.tableName,
+                    properties.getDeltaColumnOf(this.tableName));
+        }
+        this.deltaColumn = deltaColumn == null ? null : deltaColumn.getName();
+        int deltaIndex = deltaColumn == null ? -1
+                : indexOfIgnoreCase(selectColumns.toArray(new String[0]), deltaColumn.getName());
+        if (deltaColumn != null && deltaIndex < 0) {
+            deltaIndex = selectColumns.size();
+            selectColumns.add(deltaColumn.getName());
+        }
+        this.deltaIndex = deltaIndex;
+        this.deltaTemporal = deltaColumn != null && (deltaColumn.getTypeName().startsWith("DATE")
+                || deltaColumn.getTypeName().startsWith("TIMESTAMP"));
+        this.selectColumns = selectColumns.toArray(new String[0]);
+        this.lobColumns = new LobColumns(this.sourceJdbc, sourceTable, this.keyColumns, this.keyIndexes,
+                this.selectColumns, this.columnNamesInTargetDB.length, properties);
+        this.selectList = this.lobColumns.getSelectList(this.selectColumns);
+        if (!this.lobColumns.isEmpty()) {
+            log.info("table {} streams values larger than {} bytes of {} columns", this.tableName,
+                    properties.getLobInlineBytes(), this.lobColumns.getExtraColumns());
+        }
+        int extraColumns = this.selectColumns.length - this.columnNamesInTargetDB.length
+                + this.lobColumns.getExtraColumns();
+        if (this.targetJdbc == null) {
+            this.rowConverter = RowConverter.compile(targetTable.getColumns(), extraColumns);
+            this.copyWriter.setColumnTypes(targetTable.getColumns());
+        } else {
+            this.rowConverter = this.targetJdbc.query(String.format("select %s from %s where 1 = 0",
+                    String.join(",", columnNamesInTargetDB), this.tableName),
+                    (ResultSetExtractor<RowConverter>) rs -> RowConverter.compile(rs.getMetaData(), extraColumns));
+        }
+        int batchesInFlight = properties.getQueueDepth() + properties.getWriterThreads() + 2;
+        this.batchPool = new RowBatchPool(this.rowConverter.getTypes(),
+                batchesInFlight * Math.max(1, properties.getRangeWorkers()), properties.isBatchOffHeap(),
+                properties.getBatchMaxBytes());
+    }
+
+    private static int indexOfIgnoreCase(String[] values, String value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equalsIgnoreCase(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private DataTableMigration(DataTableMigration table, KeyRange range) {
+        this.tableName = table.tableName;
+        this.sourceJdbc = table.sourceJdbc;
+        this.targetJdbc = table.targetJdbc;
+        this.primaryKey = table.primaryKey;
+        this.keyColumns = table.keyColumns;
+        this.columnNamesInSourceDB = table.columnNamesInSourceDB;
+        this.columnNamesInTargetDB = table.columnNamesInTargetDB;
+        this.columnMappings = table.columnMappings;
+        this.properties = table.properties;
+        this.copyWriter = table.copyWriter;
+        this.loadTransactions = table.loadTransactions;
+        this.selectColumns = table.selectColumns;
+        this.selectList = table.selectList;
+        this.lobColumns = table.lobColumns;
+        this.keyIndexes = table.keyIndexes;
+        this.rowConverter = table.rowConverter;
+        this.batchPool = table.batchPool;
+        this.deltaColumn = table.deltaColumn;
+        this.deltaIndex = table.deltaIndex;
+        this.deltaTemporal = table.deltaTemporal;
+        this.connectionBudget = table.connectionBudget;
+        this.segments = table.segments;
+        this.postLoad = table.postLoad;
+        this.journal = table.journal;
+        this.metrics = table.metrics;
+        this.jobControl = table.jobControl;
+        this.totalRecords = table.totalRecords;
+        this.range = range;
+    }
+
+    public void setConnectionBudget(ConnectionBudget connectionBudget) {
+        this.connectionBudget = connectionBudget;
+    }
+
+    /**
+     * writes the rows into segments of the export instead of the target
+     */
+    public void setDump(DumpWriter dump) throws IOException {
+        this.segments = dump.open(this.tableName, copyWriter, lobColumns, columnNamesInTargetDB);
+    }
+
+    /**
+     * the table is finished by a {@link PostLoadBuilder} after its rows are in
+     */
+    public void setPostLoad(boolean postLoad) {
+        this.postLoad = postLoad;
+    }
+
+    public void setJournal(CheckpointJournal journal) {
+        this.journal = journal;
+    }
+
+    public void setMetrics(MigrationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setJobControl(JobControl jobControl) {
+        this.jobControl = jobControl;
+    }
+
+    public boolean hasDeltaColumn() {
+        return deltaColumn != null;
+    }
+
+    /**
+     * @return the newest change on the source, null when no row has a change time
+     */
+    public Object getNewestChange() {
+        return getSourceJdbc().queryForObject(
+                String.format("select max(%s) from %s", deltaColumn, this.tableName), (rs, n) -> rs.getObject(1));
     }
 
     protected JdbcTemplate getSourceJdbc() {
@@ -63,31 +321,323 @@ public class DataTableMigration extends CommonMigration {
     }
 
     @Override
-    protected List<Map<String, Object>> queryForList(String querySql, int offset, int stepLength) {
-        List<Map<String, Object>> queryForList = new ArrayList<>();
+    protected RowBatch queryForList(String querySql, int offset, int stepLength) {
+        return getSourceJdbc().query(querySql, rowsOf(stepLength), offset, stepLength);
+    }
+
+    @Override
+    protected RowBatch queryAfter(Object[] lastKey, int stepLength) {
+        String querySql = getKeysetQuerySql(lastKey != null);
+        Object[] params = keysetParams(lastKey, stepLength);
+        return getSourceJdbc().query(querySql, rowsOf(stepLength), params);
+    }
+
+    /**
+     * reads the result into a pooled batch, handed back if the read fails
+     */
+    private ResultSetExtractor<RowBatch> rowsOf(int stepLength) {
+        return rs -> {
+            RowBatch rows = batchPool.acquire(stepLength);
+            try {
+                while (rs.next()) {
+                    rowConverter.read(rs, rows);
+                }
+            } catch (SQLException | RuntimeException e) {
+                rows.recycle();
+                throw e;
+            }
+            return rows;
+        };
+    }
+
+    private Object[] keysetParams(Object[] lastKey, int stepLength) {
+        List<Object> params = new ArrayList<>();
+        if (range != null) {
+            params.addAll(range.getParams());
+        }
+        params.addAll(seekParams(lastKey));
+        params.add(stepLength);
+        return params.toArray();
+    }
+
+    private List<Object> seekParams(Object[] lastKey) {
+        List<Object> params = new ArrayList<>();
+        for (int i = 0; lastKey != null && i < lastKey.length; i++) {
+            params.addAll(Arrays.asList(lastKey).subList(0, i + 1));
+        }
+        return params;
+    }
+
+    @Override
+    protected Object[] getKey(RowBatch rows, int row) {
+        Object[] key = new Object[keyIndexes.length];
+        for (int i = 0; i < keyIndexes.length; i++) {
+            key[i] = rows.getValue(keyIndexes[i], row);
+        }
+        return key;
+    }
+
+    @Override
+    protected RowBatch queryChangedAfter(Object watermark, Object[] lastKey, int stepLength) {
+        String[] changeKey = new String[keyColumns.length + 1];
+        changeKey[0] = deltaColumn;
+        System.arraycopy(keyColumns, 0, changeKey, 1, keyColumns.length);
+        List<Object> params = new ArrayList<>();
+        String condition = getChangedCondition(watermark, params);
+        if (lastKey != null) {
+            condition += " and (" + getSeekCondition(changeKey) + ")";
+            params.addAll(seekParams(lastKey));
+        }
+        params.add(stepLength);
+        String querySql = String.format("select %s from %s where %s order by %s limit ?", getSelectList(),
+                this.tableName, condition, String.join(",", changeKey));
+        return getSourceJdbc().query(querySql, rowsOf(stepLength), params.toArray());
+    }
+
+    @Override
+    protected Object[] getChangeKey(RowBatch rows, int row) {
+        Object[] changeKey = new Object[keyIndexes.length + 1];
+        changeKey[0] = rows.getValue(deltaIndex, row);
+        System.arraycopy(getKey(rows, row), 0, changeKey, 1, keyIndexes.length);
+        return changeKey;
+    }
+
+    @Override
+    protected long getChangedRecords(Object watermark) {
+        List<Object> params = new ArrayList<>();
+        String condition = getChangedCondition(watermark, params);
+        return getSourceJdbc().queryForObject(String.format("select count(1) from %s where %s", this.tableName,
+                condition), Long.class, params.toArray());
+    }
+
+    /**
+     * Rows past the watermark. A date or time watermark is moved back by the overlap, a
+     * transaction that stamped its rows before the newest copied change may commit after it.
+     */
+    private String getChangedCondition(Object watermark, List<Object> params) {
+        if (watermark == null) {
+            return deltaColumn + " is not null";
+        }
+        if (deltaTemporal) {
+            params.add(new Timestamp(toTimestamp(watermark).getTime() - properties.getDeltaOverlapSeconds() * 1000L));
+        } else {
+            params.add(watermark);
+        }
+        return deltaColumn + " > ?";
+    }
+
+    /**
+     * the watermark comes back from the journal as the text of the value it was read as
+     */
+    private static Timestamp toTimestamp(Object value) {
+        if (value instanceof Timestamp) {
+            return (Timestamp) value;
+        }
+        if (value instanceof Date) {
+            return new Timestamp(((Date) value).getTime());
+        }
+        if (value instanceof LocalDateTime) {
+            return Timestamp.valueOf((LocalDateTime) value);
+        }
+        if (value instanceof LocalDate) {
+            return Timestamp.valueOf(((LocalDate) value).atStartOfDay());
+        }
+        String text = value.toString();
+        if (text.length() == 10) {
+            return Timestamp.valueOf(LocalDate.parse(text).atStartOfDay());
+        }
+        return text.indexOf('T') > 0 ? Timestamp.valueOf(LocalDateTime.parse(text)) : Timestamp.valueOf(text);
+    }
+
+    @Override
+    protected void streamRows(IntSupplier batchSize, RowsHandler handler) throws Exception {
+        getSourceJdbc().execute((ConnectionCallback<Void>) con -> {
+            prepareStreamingSession(con);
+            try (Statement stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(getStreamFetchSize(con));
+                try (ResultSet rs = stmt.executeQuery(getStreamQuerySql())) {
+                    int size = batchSize.getAsInt();
+                    RowBatch rows = batchPool.acquire(size);
+                    while (rs.next()) {
+                        rowConverter.read(rs, rows);
+                        if (rows.size() >= size) {
+                            handleRows(handler, rows);
+                            size = batchSize.getAsInt();
+                            rows = batchPool.acquire(size);
+                        }
+                    }
+                    if (!rows.isEmpty()) {
+                        handleRows(handler, rows);
+                    } else {
+                        rows.recycle();
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * the server keeps the cursor open while we write, so it must not give up on a slow consumer
+     */
+    private void prepareStreamingSession(Connection con) throws SQLException {
+        if (!con.getMetaData().getDatabaseProductName().toLowerCase().contains("mysql")) {
+            return;
+        }
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("set session net_write_timeout = " + properties.getStreamNetWriteTimeout());
+        }
+    }
+
+    /**
+     * Integer.MIN_VALUE makes Connector/J stream row by row, a positive size only
+     * uses a server side cursor when the source url has useCursorFetch=true
+     */
+    private int getStreamFetchSize(Connection con) throws SQLException {
+        int fetchSize = properties.getStreamFetchSize();
+        if (fetchSize > 0 && !con.getMetaData().getURL().contains("useCursorFetch=true")) {
+            log.warn("fetch size {} without useCursorFetch=true on the source url, table {} will be read into memory",
+                    fetchSize, this.tableName);
+        }
+        return fetchSize;
+    }
+
+    private static void handleRows(RowsHandler handler, RowBatch rows) throws SQLException {
+        try {
+            handler.handle(rows);
+        } catch (RuntimeException | SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException(e);
+        }
+    }
+
+    @Override
+    protected void batchInsert(RowBatch rows) throws SQLException, IOException {
+        if (segments != null) {
+            segments.write(rows);
+            return;
+        }
+        if (isUpsert()) {
+            batchUpdate(getUpsertSQL(), rows);
+            return;
+        }
+        if (loadTransactions == null) {
+            load(rows);
+            return;
+        }
+        // the table is unlogged until loaded, set local keeps the pooled connection committing synchronously
+        TransactionStatus status = loadTransactions.getTransaction(TransactionDefinition.withDefaults());
         try {
-            queryForList = getSourceJdbc().queryForList(querySql, offset, stepLength);
-        } catch (DataAccessException e) {
-            log.error("query table {} data error:{},break",this.tableName,e.getMessage());
+            getTargetJdbc().execute("set local synchronous_commit = off");
+            load(rows);
+        } catch (RuntimeException e) {
+            loadTransactions.rollback(status);
+            throw e;
+        }
+        loadTransactions.commit(status);
+    }
+
+    private void load(RowBatch rows) {
+        if (properties.getWriteMode() == WriteMode.COPY) {
+            copyWriter.write(rows, lobColumns);
+            return;
+        }
+        batchUpdate(getInsertSQL(), rows);
+    }
+
+    /**
+     * the streams of the large values are closed once the statement ran, or failed before reading them
+     */
+    private void batchUpdate(String sql, RowBatch rows) {
+        List<Closeable> streams = new ArrayList<>();
+        try {
+            getTargetJdbc().batchUpdate(sql, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    bind(ps, rows, i, streams);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return rows.size();
+                }
+            });
+        } finally {
+            LobColumns.close(streams);
+        }
+    }
+
+    private void bind(PreparedStatement ps, RowBatch rows, int row, List<Closeable> streams) throws SQLException {
+        rowConverter.bind(ps, rows, row);
+        if (lobColumns.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < columnNamesInTargetDB.length; i++) {
+            if (lobColumns.isDeferred(rows, i, row)) {
+                streams.add(lobColumns.bind(ps, rows, i, row));
+            }
         }
-        return queryForList;
     }
 
     @Override
-    protected void batchInsert(List<Map<String, Object>> rows) throws SQLException {
-        String insertSQL = getInsertSQL();
-        log.info("insert sql: {}",insertSQL);
-        getTargetJdbc().batchUpdate(insertSQL,
-                rows.stream().map(this::rowToParam)
-                        .collect(Collectors.toList()));
+    protected int insertRowByRow(RowBatch rows) {
+        String insertSQL = isUpsert() ? getUpsertSQL() : getInsertSQL();
+        int inserted = 0;
+        List<Closeable> streams = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            int row = i;
+            try {
+                inserted += getTargetJdbc().update(insertSQL, ps -> bind(ps, rows, row, streams));
+            } catch (DuplicateKeyException e) {
+                log.debug("table {} skip duplicate row {}", this.tableName, Arrays.toString(getKey(rows, row)));
+            } finally {
+                LobColumns.close(streams);
+            }
+        }
+        return inserted;
+    }
 
+    /**
+     * Rows written after the last checkpoint are deleted before the range resumes, so they
+     * are copied again as fast as the rest instead of failing on their key one by one, and
+     * a bulk load without a primary key on the target doesn't double them.
+     */
+    @Override
+    protected void discardAfter(Object[] lastKey) {
+        String[] targetKeyColumns = new String[keyIndexes.length];
+        for (int i = 0; i < keyIndexes.length; i++) {
+            if (keyIndexes[i] >= columnNamesInTargetDB.length) {
+                log.warn("table {} key column {} isn't copied, rows after {} may be doubled", this.tableName,
+                        keyColumns[i], Arrays.toString(lastKey));
+                return;
+            }
+            targetKeyColumns[i] = columnNamesInTargetDB[keyIndexes[i]];
+        }
+        List<String> conditions = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        if (range != null && !range.getCondition().isEmpty()) {
+            conditions.add(range.getCondition(targetKeyColumns[0]));
+            params.addAll(range.getParams());
+        }
+        if (lastKey != null) {
+            conditions.add("(" + getSeekCondition(targetKeyColumns) + ")");
+            params.addAll(seekParams(lastKey));
+        }
+        if (conditions.isEmpty()) {
+            truncateTarget();
+            return;
+        }
+        int deleted = getTargetJdbc().update(String.format("delete from %s where %s", this.tableName,
+                String.join(" and ", conditions)), params.toArray());
+        log.info("table {} deleted {} rows {} written since the last checkpoint", this.tableName, deleted,
+                lastKey == null ? "of range " + range : "after " + Arrays.toString(lastKey));
     }
 
-    private Object[] rowToParam(Map<String, Object> row) {
-        return Arrays.stream(columnNamesInTargetDB)
-                .map(colInSource -> columnMappings.getOrDefault(colInSource, colInSource))
-                .map(row::get)
-                .toArray();
+    @Override
+    protected void truncateTarget() {
+        log.info("truncate table {} on target", this.tableName);
+        getTargetJdbc().execute("truncate table " + this.tableName);
     }
 
     protected String getInsertSQL() {
@@ -99,6 +649,33 @@ public class DataTableMigration extends CommonMigration {
                         .collect(Collectors.joining(",")));
     }
 
+    /**
+     * delta passes read rows the target already has, so they always upsert
+     */
+    private boolean isUpsert() {
+        return properties.getWriteMode() == WriteMode.UPSERT || isCopyingChanges();
+    }
+
+    protected String getUpsertSQL() {
+        if (keyColumns.length == 0) {
+            throw new IllegalStateException("table " + this.tableName + " has no primary key to upsert by");
+        }
+        List<String> targetKeyColumns = new ArrayList<>();
+        for (int i = 0; i < keyIndexes.length; i++) {
+            if (keyIndexes[i] >= columnNamesInTargetDB.length) {
+                throw new IllegalStateException(String.format("table %s key column %s isn't copied, can't upsert",
+                        this.tableName, keyColumns[i]));
+            }
+            targetKeyColumns.add(columnNamesInTargetDB[keyIndexes[i]]);
+        }
+        List<String> updates = Arrays.stream(columnNamesInTargetDB)
+                .filter(column -> !targetKeyColumns.contains(column))
+                .map(column -> column + " = excluded." + column)
+                .collect(Collectors.toList());
+        return String.format("%s on conflict (%s) do %s", getInsertSQL(), String.join(",", targetKeyColumns),
+                updates.isEmpty() ? "nothing" : "update set " + String.join(",", updates));
+    }
+
     @Override
     protected String getQuerySql() {
 
@@ -109,19 +686,197 @@ public class DataTableMigration extends CommonMigration {
         //        String.join(",", columnNamesInSourceDB),
         //        this.tableName,
         //        this.primaryKey);
-        return String.format("select * from %s limit ?,?",this.tableName);
+        return String.format("select %s from %s limit ?,?", getSelectList(), this.tableName);
+    }
+
+    private String getSelectList() {
+        return selectList;
+    }
+
+    @Override
+    protected String getKeysetQuerySql(boolean afterKey) {
+        String orderBy = String.join(",", keyColumns);
+        String rangeCondition = range == null ? "" : range.getCondition();
+        if (!afterKey) {
+            return String.format("select %s from %s %s order by %s limit ?", getSelectList(), this.tableName,
+                    rangeCondition.isEmpty() ? "" : "where " + rangeCondition, orderBy);
+        }
+        String seek = getSeekCondition(keyColumns);
+        return String.format("select %s from %s where %s order by %s limit ?", getSelectList(), this.tableName,
+                rangeCondition.isEmpty() ? seek : rangeCondition + " and (" + seek + ")", orderBy);
+    }
+
+    /**
+     * expands {@code (k1,k2,k3) > (?,?,?)} into
+     * {@code k1 > ? or (k1 = ? and k2 > ?) or (k1 = ? and k2 = ? and k3 > ?)},
+     * the form MySQL turns into an index range scan
+     */
+    private static String getSeekCondition(String[] keyColumns) {
+        List<String> seeks = new ArrayList<>();
+        for (int i = 0; i < keyColumns.length; i++) {
+            List<String> conditions = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+                conditions.add(keyColumns[j] + " = ?");
+            }
+            conditions.add(keyColumns[i] + " > ?");
+            seeks.add("(" + String.join(" and ", conditions) + ")");
+        }
+        return String.join(" or ", seeks);
+    }
+
+    @Override
+    protected List<DataTableMigration> split(List<Object> splitPoints) {
+        if (range != null || keyColumns.length == 0) {
+            return Collections.emptyList();
+        }
+        if (splitPoints == null) {
+            if (properties.getTableChunks() <= 1 || getTotalRecords() < properties.getChunkMinRecords()) {
+                return Collections.emptyList();
+            }
+            splitPoints = getSplitPoints(properties.getTableChunks());
+        }
+        if (splitPoints.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<DataTableMigration> parts = KeyRange.split(keyColumns[0], splitPoints).stream()
+                .map(keyRange -> new DataTableMigration(this, keyRange))
+                .collect(Collectors.toList());
+        log.info("table {} split into {}", this.tableName, parts.stream()
+                .map(part -> part.range.toString()).collect(Collectors.joining(",")));
+        return parts;
+    }
+
+    /**
+     * Integer keys are cut into ranges of equal width between min and max. Other keys
+     * are sampled every {@code totalRecords / chunks} rows along the key index.
+     */
+    private List<Object> getSplitPoints(int chunks) {
+        String column = keyColumns[0];
+        Map<String, Object> minMax = getSourceJdbc().queryForMap(
+                String.format("select min(%1$s) min_key, max(%1$s) max_key from %2$s", column, this.tableName));
+        BigInteger min = toBigInteger(minMax.get("min_key"));
+        BigInteger max = toBigInteger(minMax.get("max_key"));
+        List<Object> splitPoints = new ArrayList<>();
+        if (min != null && max != null) {
+            BigInteger step = max.subtract(min).add(BigInteger.ONE)
+                    .divide(BigInteger.valueOf(chunks)).max(BigInteger.ONE);
+            for (int i = 1; i < chunks; i++) {
+                BigInteger splitPoint = min.add(step.multiply(BigInteger.valueOf(i)));
+                if (splitPoint.compareTo(max) > 0) {
+                    break;
+                }
+                splitPoints.add(splitPoint.bitLength() < 64 ? (Object) splitPoint.longValue() : new BigDecimal(splitPoint));
+            }
+            return splitPoints;
+        }
+        if (minMax.get("min_key") == null) {
+            return splitPoints;
+        }
+        String sampleSql = String.format("select %1$s from %2$s order by %1$s limit 1 offset ?", column, this.tableName);
+        for (int i = 1; i < chunks; i++) {
+            long offset = (long) getTotalRecords() * i / chunks;
+            List<Object> sample = getSourceJdbc().queryForList(sampleSql, Object.class, offset);
+            if (!sample.isEmpty() && (splitPoints.isEmpty() || !sample.get(0).equals(splitPoints.get(splitPoints.size() - 1)))) {
+                splitPoints.add(sample.get(0));
+            }
+        }
+        return splitPoints;
+    }
+
+    private static BigInteger toBigInteger(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return BigInteger.valueOf(((Number) value).longValue());
+        }
+        if (value instanceof BigInteger) {
+            return (BigInteger) value;
+        }
+        if (value instanceof BigDecimal && ((BigDecimal) value).scale() <= 0) {
+            return ((BigDecimal) value).toBigInteger();
+        }
+        return null;
+    }
+
+    @Override
+    protected String getStreamQuerySql() {
+        return String.format("select %s from %s", getSelectList(), this.tableName);
+    }
+
+    @Override
+    protected ReadMode getReadMode() {
+        return properties.getReadMode();
+    }
+
+    @Override
+    protected boolean hasUsableKey() {
+        return keyColumns.length > 0;
+    }
+
+    @Override
+    protected boolean hasPostLoad() {
+        return postLoad;
+    }
+
+    @Override
+    protected KeyRange getRange() {
+        return range;
+    }
+
+    @Override
+    protected CheckpointJournal getJournal() {
+        return journal;
+    }
+
+    @Override
+    protected MigrationMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    protected JobControl getJobControl() {
+        return jobControl;
+    }
+
+    @Override
+    protected int getRangeWorkers() {
+        return properties.getRangeWorkers();
+    }
+
+    @Override
+    protected ConnectionBudget getConnectionBudget() {
+        return connectionBudget;
     }
 
     @Override
     protected int getStepLength() {
-        return 100;
+        return properties.getBatchSize();
+    }
+
+    @Override
+    protected AdaptiveBatchSizer createBatchSizer() {
+        if (!properties.isAdaptiveBatchSize()) {
+            return AdaptiveBatchSizer.fixed(properties.getBatchSize());
+        }
+        return new AdaptiveBatchSizer(properties.getBatchSize(), properties.getBatchMinSize(),
+                properties.getBatchMaxSize(), properties.getBatchMaxBytes(), properties.getBatchTargetMillis());
+    }
+
+    @Override
+    protected int getQueueDepth() {
+        return properties.getQueueDepth();
+    }
+
+    @Override
+    protected int getWriterThreads() {
+        return properties.getWriterThreads();
     }
 
     @Override
     protected int getTotalRecords() {
-        int count = getSourceJdbc().queryForObject(
-                "select count(1) from " + tableName, Integer.class);
-        return count;
+        if (totalRecords == null) {
+            totalRecords = getSourceJdbc().queryForObject(
+                    "select count(1) from " + tableName, Integer.class);
+        }
+        return totalRecords;
     }
 
 
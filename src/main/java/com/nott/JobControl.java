@@ -0,0 +1,98 @@
+package com.nott;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pause, cancel and throttle switches of a running job. The readers of every table call
+ * {@link #checkpoint(int)} between two batches, so a switch takes effect within one batch.
+ * Batches already queued for the writers are still written after a pause.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+public class JobControl {
+
+    private volatile boolean paused;
+    private volatile boolean cancelled;
+
+    /**
+     * rows per second over all tables of the job, 0 for no limit
+     */
+    private volatile long rowsPerSecond;
+
+    /**
+     * when the next rows may be read under the throttle
+     */
+    private long nextFreeNanos = System.nanoTime();
+
+    public synchronized void pause() {
+        paused = true;
+    }
+
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+
+    public synchronized void cancel() {
+        cancelled = true;
+        notifyAll();
+    }
+
+    public synchronized void throttle(long rowsPerSecond) {
+        this.rowsPerSecond = Math.max(0, rowsPerSecond);
+        this.nextFreeNanos = System.nanoTime();
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    /**
+     * Blocks while the job is paused or over its throttle.
+     *
+     * @param rows rows about to be handed to the writers
+     * @throws CancellationException when the job was cancelled
+     */
+    public void checkpoint(int rows) throws InterruptedException {
+        awaitResume();
+        long waitNanos;
+        synchronized (this) {
+            long rate = rowsPerSecond;
+            if (rate <= 0) {
+                return;
+            }
+            long now = System.nanoTime();
+            long start = nextFreeNanos - now > 0 ? nextFreeNanos : now;
+            nextFreeNanos = start + TimeUnit.SECONDS.toNanos(rows) / rate;
+            waitNanos = start - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+            awaitResume();
+        }
+    }
+
+    private synchronized void awaitResume() throws InterruptedException {
+        while (paused && !cancelled) {
+            wait();
+        }
+        checkCancelled();
+    }
+
+    public void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("job cancelled");
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.nott;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A slice of a table on the leading primary key column, {@code lower <= column < upper}.
+ * A null bound is open, so the first and the last range of a table also catch
+ * rows outside the min/max seen when the table was split.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Getter
+public class KeyRange {
+
+    private final int index;
+    private final String column;
+    private final Object lower;
+    private final Object upper;
+
+    public KeyRange(int index, String column, Object lower, Object upper) {
+        this.index = index;
+        this.column = column;
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    /**
+     * @return the where condition of this range, empty when both bounds are open
+     */
+    public String getCondition() {
+        return getCondition(column);
+    }
+
+    /**
+     * @param column name of the key column on the side the condition is for
+     */
+    public String getCondition(String column) {
+        List<String> conditions = new ArrayList<>();
+        if (lower != null) {
+            conditions.add(column + " >= ?");
+        }
+        if (upper != null) {
+            conditions.add(column + " < ?");
+        }
+        return String.join(" and ", conditions);
+    }
+
+    public List<Object> getParams() {
+        List<Object> params = new ArrayList<>();
+        if (lower != null) {
+            params.add(lower);
+        }
+        if (upper != null) {
+            params.add(upper);
+        }
+        return params;
+    }
+
+    /**
+     * splits the table on {@code boundaries}, which must be ascending and distinct
+     */
+    public static List<KeyRange> split(String column, List<?> boundaries) {
+        List<KeyRange> ranges = new ArrayList<>();
+        Object lower = null;
+        for (Object boundary : boundaries) {
+            ranges.add(new KeyRange(ranges.size(), column, lower, boundary));
+            lower = boundary;
+        }
+        ranges.add(new KeyRange(ranges.size(), column, lower, null));
+        return ranges;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[%s,%s)", column, lower == null ? "" : lower, upper == null ? "" : upper);
+    }
+}
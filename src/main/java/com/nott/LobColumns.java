@@ -0,0 +1,403 @@
+package com.nott;
+
+import com.nott.config.MigrationProperties;
+import com.nott.schema.ColumnSchema;
+import com.nott.schema.TableSchema;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The large BLOB and TEXT columns of a table, which are not read with their rows.
+ * <p>
+ * The query of a batch selects a value of such a column only up to {@code lobInlineBytes},
+ * a larger one comes back as null next to its length. The writer then reads it by primary
+ * key in chunks of {@code lobChunkSize} and streams the chunks into the COPY or the insert,
+ * so a large value is never held whole however large it is.
+ * <p>
+ * All chunks of a value are read on one connection in one read-only REPEATABLE READ
+ * transaction, so they come from the same version of the row even if it is updated meanwhile.
+ * That version may be newer than the one the batch read, like any row changed during the copy.
+ * A binary value bound to an insert is sent with the length the batch read, and fails if the
+ * transaction finds another length.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Slf4j
+public class LobColumns {
+
+    /**
+     * receives the chunks of a value in order, text as UTF-8
+     */
+    public interface ChunkHandler {
+        void handle(byte[] chunk) throws SQLException;
+    }
+
+    private final DataSource sourceDataSource;
+    private final int[] keyIndexes;
+    private final int chunkSize;
+    private final long inlineBytes;
+
+    /**
+     * by target column, the source column read in chunks or null
+     */
+    private final String[] sourceColumns;
+    private final boolean[] binary;
+    private final String[] chunkSqls;
+    private final String[] lengthSqls;
+
+    /**
+     * by target column, where the length of a value is in a row, -1 for other columns
+     */
+    private final int[] lengthIndexes;
+    private final int extraColumns;
+
+    /**
+     * @param selectColumns source column of every target column, followed by the extra columns
+     * @param targetColumns number of target columns
+     */
+    public LobColumns(JdbcTemplate sourceJdbc, TableSchema sourceTable, String[] keyColumns, int[] keyIndexes,
+                      String[] selectColumns, int targetColumns, MigrationProperties properties) {
+        this.sourceDataSource = sourceJdbc.getDataSource();
+        this.keyIndexes = keyIndexes;
+        this.chunkSize = Math.max(1, properties.getLobChunkSize());
+        this.inlineBytes = properties.getLobInlineBytes();
+        this.sourceColumns = new String[targetColumns];
+        this.binary = new boolean[targetColumns];
+        this.chunkSqls = new String[targetColumns];
+        this.lengthSqls = new String[targetColumns];
+        this.lengthIndexes = new int[targetColumns];
+        Arrays.fill(lengthIndexes, -1);
+        Set<String> lobTypes = Arrays.stream(properties.getLobTypes().split(","))
+                .map(type -> type.trim().toUpperCase()).collect(Collectors.toSet());
+        String keyCondition = Arrays.stream(keyColumns).map(column -> column + " = ?")
+                .collect(Collectors.joining(" and "));
+        int extraColumns = 0;
+        // without a key a value can't be found again, it is read with its row
+        for (int i = 0; i < targetColumns && inlineBytes > 0 && keyColumns.length > 0; i++) {
+            ColumnSchema column = sourceTable.getColumn(selectColumns[i]);
+            if (column == null || !lobTypes.contains(column.getTypeName())) {
+                continue;
+            }
+            sourceColumns[i] = column.getName();
+            binary[i] = column.getTypeName().endsWith("BLOB") || column.getTypeName().endsWith("BINARY");
+            chunkSqls[i] = String.format("select substring(%s, ?, ?) from %s where %s", column.getName(),
+                    sourceTable.getName(), keyCondition);
+            lengthSqls[i] = String.format("select length(%s) from %s where %s", column.getName(),
+                    sourceTable.getName(), keyCondition);
+            lengthIndexes[i] = selectColumns.length + extraColumns++;
+        }
+        this.extraColumns = extraColumns;
+    }
+
+    public boolean isEmpty() {
+        return extraColumns == 0;
+    }
+
+    /**
+     * @return the select list of a batch, the large values cut off and their lengths appended
+     */
+    public String getSelectList(String[] selectColumns) {
+        List<String> selectList = new ArrayList<>(Arrays.asList(selectColumns));
+        List<String> lengths = new ArrayList<>();
+        for (int i = 0; i < sourceColumns.length; i++) {
+            if (sourceColumns[i] != null) {
+                selectList.set(i, String.format("case when length(%1$s) <= %2$d then %1$s end", sourceColumns[i],
+                        inlineBytes));
+                lengths.add("length(" + sourceColumns[i] + ")");
+            }
+        }
+        selectList.addAll(lengths);
+        return String.join(",", selectList);
+    }
+
+    /**
+     * @return columns {@link #getSelectList} adds after the given ones
+     */
+    public int getExtraColumns() {
+        return extraColumns;
+    }
+
+    /**
+     * @return true when the value wasn't read with its row and must be read with {@link #read}
+     */
+    public boolean isDeferred(RowBatch rows, int column, int row) {
+        return column < lengthIndexes.length && lengthIndexes[column] >= 0 && rows.isNull(column, row)
+                && !rows.isNull(lengthIndexes[column], row);
+    }
+
+    public boolean isBinary(int column) {
+        return binary[column];
+    }
+
+    /**
+     * reads a deferred value in chunks
+     */
+    public void read(RowBatch rows, int column, int row, ChunkHandler handler) throws SQLException {
+        try (Snapshot snapshot = new Snapshot(column, getKey(rows, row))) {
+            long position = 1;
+            while (true) {
+                Chunk chunk = snapshot.readChunk(position);
+                if (chunk.bytes.length > 0) {
+                    handler.handle(chunk.bytes);
+                }
+                if (chunk.length < chunkSize) {
+                    return;
+                }
+                position += chunk.length;
+            }
+        }
+    }
+
+    /**
+     * Binds a deferred value as a stream, which the driver reads chunk by chunk as it sends the
+     * statement. The stream holds a source connection from its first read to its end.
+     *
+     * @return the stream, to {@link #close} once the statement ran or failed
+     */
+    public Closeable bind(PreparedStatement ps, RowBatch rows, int column, int row) throws SQLException {
+        long length = ((Number) rows.getValue(lengthIndexes[column], row)).longValue();
+        ChunkInputStream in = new ChunkInputStream(column, getKey(rows, row), binary[column] ? length : -1);
+        if (binary[column]) {
+            ps.setBinaryStream(column + 1, in, length);
+        } else {
+            ps.setCharacterStream(column + 1, new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+        return in;
+    }
+
+    /**
+     * closes the streams {@link #bind} returned, handing back the connections of those not read to the end
+     */
+    public static void close(List<Closeable> streams) {
+        for (Closeable stream : streams) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                log.warn("close lob stream error : {}", e.getMessage());
+            }
+        }
+        streams.clear();
+    }
+
+    /**
+     * the key is copied out of the batch, a driver may read a stream after the batch is recycled
+     */
+    private Object[] getKey(RowBatch rows, int row) {
+        Object[] key = new Object[keyIndexes.length];
+        for (int i = 0; i < keyIndexes.length; i++) {
+            key[i] = rows.getValue(keyIndexes[i], row);
+        }
+        return key;
+    }
+
+    /**
+     * the read-only REPEATABLE READ transaction the chunks of one value are read in
+     */
+    private class Snapshot implements AutoCloseable {
+        private final int column;
+        private final Object[] key;
+        private final Connection con;
+        private final boolean autoCommit;
+        private final boolean readOnly;
+        private final int isolation;
+        private PreparedStatement chunkStatement;
+
+        Snapshot(int column, Object[] key) throws SQLException {
+            this.column = column;
+            this.key = key;
+            this.con = sourceDataSource.getConnection();
+            try {
+                this.autoCommit = con.getAutoCommit();
+                this.readOnly = con.isReadOnly();
+                this.isolation = con.getTransactionIsolation();
+                con.setReadOnly(true);
+                con.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+                con.setAutoCommit(false);
+            } catch (SQLException | RuntimeException e) {
+                con.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the length of the value as the transaction sees it, -1 when the row is gone
+         */
+        long readLength() throws SQLException {
+            try (PreparedStatement ps = con.prepareStatement(lengthSqls[column])) {
+                setKey(ps, 1);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : -1;
+                }
+            }
+        }
+
+        /**
+         * substring counts bytes of binary and characters of text, from 1
+         */
+        Chunk readChunk(long position) throws SQLException {
+            if (chunkStatement == null) {
+                chunkStatement = con.prepareStatement(chunkSqls[column]);
+            }
+            chunkStatement.setLong(1, position);
+            chunkStatement.setInt(2, chunkSize);
+            setKey(chunkStatement, 3);
+            try (ResultSet rs = chunkStatement.executeQuery()) {
+                if (!rs.next()) {
+                    // the row is gone since it was read
+                    return Chunk.EMPTY;
+                }
+                if (binary[column]) {
+                    byte[] bytes = rs.getBytes(1);
+                    return bytes == null ? Chunk.EMPTY : new Chunk(bytes, bytes.length);
+                }
+                String text = rs.getString(1);
+                return text == null ? Chunk.EMPTY
+                        : new Chunk(text.getBytes(StandardCharsets.UTF_8), text.codePointCount(0, text.length()));
+            }
+        }
+
+        private void setKey(PreparedStatement ps, int index) throws SQLException {
+            for (int i = 0; i < key.length; i++) {
+                ps.setObject(index + i, key[i]);
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                if (chunkStatement != null) {
+                    chunkStatement.close();
+                }
+                con.rollback();
+                con.setAutoCommit(autoCommit);
+                con.setTransactionIsolation(isolation);
+                con.setReadOnly(readOnly);
+            } finally {
+                con.close();
+            }
+        }
+    }
+
+    private static class Chunk {
+        static final Chunk EMPTY = new Chunk(new byte[0], 0);
+
+        final byte[] bytes;
+
+        /**
+         * bytes or characters, as substring counts them
+         */
+        final int length;
+
+        Chunk(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+
+    /**
+     * opens its {@link Snapshot} on the first read, so a batch of bound values holds one
+     * connection at a time as the driver reads them in turn
+     */
+    private class ChunkInputStream extends InputStream {
+        private final int column;
+        private final Object[] key;
+
+        /**
+         * the length the value was bound with, -1 when it wasn't given
+         */
+        private final long boundLength;
+        private Snapshot snapshot;
+        private byte[] chunk = new byte[0];
+        private int offset;
+        private long position = 1;
+        private boolean done;
+
+        ChunkInputStream(int column, Object[] key, long boundLength) {
+            this.column = column;
+            this.key = key;
+            this.boundLength = boundLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (offset == chunk.length) {
+                if (done) {
+                    return -1;
+                }
+                Chunk next;
+                try {
+                    next = nextChunk();
+                } catch (SQLException | RuntimeException e) {
+                    close();
+                    throw new IOException("read " + sourceColumns[column] + " error", e);
+                }
+                // a driver given the length stops reading at it, without asking for the end
+                done = next.length < chunkSize || boundLength >= 0 && position - 1 + next.length >= boundLength;
+                if (done) {
+                    close();
+                }
+                position += next.length;
+                chunk = next.bytes;
+                offset = 0;
+            }
+            int n = Math.min(len, chunk.length - offset);
+            System.arraycopy(chunk, offset, b, off, n);
+            offset += n;
+            return n;
+        }
+
+        private Chunk nextChunk() throws SQLException {
+            if (snapshot == null) {
+                snapshot = new Snapshot(column, key);
+                long length = boundLength < 0 ? boundLength : snapshot.readLength();
+                if (length != boundLength) {
+                    throw new SQLException(String.format("%s of row %s changed from %d to %d bytes while it "
+                            + "was copied", sourceColumns[column], Arrays.toString(key), boundLength, length));
+                }
+            }
+            return snapshot.readChunk(position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            done = true;
+            if (snapshot == null) {
+                return;
+            }
+            try {
+                snapshot.close();
+            } catch (SQLException e) {
+                throw new IOException("close snapshot of " + sourceColumns[column] + " error", e);
+            } finally {
+                snapshot = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.nott;
+
+import lombok.Getter;
+
+/**
+ * A batch of rows on its way from the reader to the writers of a table.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Getter
+public class MigrationBatch {
+
+    /**
+     * position of the batch in the read order of its range, starting at 0
+     */
+    private final long seq;
+
+    private final RowBatch rows;
+
+    /**
+     * key of the last row, null when the table is read without a key
+     */
+    private final Object[] lastKey;
+
+    public MigrationBatch(long seq, RowBatch rows, Object[] lastKey) {
+        this.seq = seq;
+        this.rows = rows;
+        this.lastKey = lastKey;
+    }
+}
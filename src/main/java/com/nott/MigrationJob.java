@@ -0,0 +1,107 @@
+package com.nott;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.nott.cdc.SyncStatus;
+import com.nott.schema.TableDdl;
+import com.nott.verify.TableVerification;
+import lombok.Getter;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A create, fill, delta, verify, export or import request running in the background, see {@link MigrationJobService}.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Getter
+public class MigrationJob {
+
+    public enum Type {
+        CREATE, FILL, DELTA, VERIFY, EXPORT, IMPORT
+    }
+
+    public enum Status {
+        QUEUED, RUNNING, PAUSED, CANCELLED, DONE, FAILED
+    }
+
+    private final String id;
+
+    private final Type type;
+
+    private final Date submittedAt = new Date();
+
+    private volatile Date startedAt;
+
+    private volatile Date finishedAt;
+
+    private volatile Status status = Status.QUEUED;
+
+    private volatile String error;
+
+    /**
+     * results of the data migration, export or import, or of the last delta pass once they run,
+     * null until it ends or when the job copies no data
+     */
+    private volatile List<TableMigrationResult> results;
+
+    /**
+     * binlog sync following the copy, null when the job doesn't sync
+     */
+    private volatile SyncStatus sync;
+
+    /**
+     * statements a create or fill job planned for the tables, null until they are planned
+     */
+    private volatile List<TableDdl> ddl;
+
+    /**
+     * tables compared by a verify job, null for other jobs
+     */
+    private volatile List<TableVerification> verification;
+
+    @JsonIgnore
+    private final JobControl control = new JobControl();
+
+    public MigrationJob(String id, Type type) {
+        this.id = id;
+        this.type = type;
+    }
+
+    public Status getStatus() {
+        return status == Status.RUNNING && control.isPaused() ? Status.PAUSED : status;
+    }
+
+    public long getRowsPerSecondLimit() {
+        return control.getRowsPerSecond();
+    }
+
+    void start() {
+        startedAt = new Date();
+        status = Status.RUNNING;
+    }
+
+    void finish(Status status, String error) {
+        this.finishedAt = new Date();
+        this.status = status;
+        this.error = error;
+    }
+
+    public void setResults(List<TableMigrationResult> results) {
+        this.results = results;
+    }
+
+    public void setSync(SyncStatus sync) {
+        this.sync = sync;
+    }
+
+    public void setDdl(List<TableDdl> ddl) {
+        this.ddl = ddl;
+    }
+
+    public void setVerification(List<TableVerification> verification) {
+        this.verification = verification;
+    }
+}
@@ -0,0 +1,113 @@
+package com.nott;
+
+import com.nott.config.MigrationProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs create and fill requests in the background so the web threads return right away.
+ * <p>
+ * Jobs get their own pool of {@code m2p.migration.job-threads} threads, apart from the
+ * web pool. On a JVM with virtual threads the pool uses them, the table workers of a job
+ * stay on platform threads since the JDBC drivers pin a carrier while they block.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Slf4j
+@Component
+public class MigrationJobService {
+
+    private final Map<String, MigrationJob> jobs = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor;
+
+    public MigrationJobService(MigrationProperties properties) {
+        this.executor = Executors.newFixedThreadPool(Math.max(1, properties.getJobThreads()),
+                threadFactory(properties.isJobVirtualThreads()));
+    }
+
+    public MigrationJob submit(MigrationJob.Type type, JobTask task) {
+        MigrationJob job = new MigrationJob(UUID.randomUUID().toString(), type);
+        jobs.put(job.getId(), job);
+        executor.execute(() -> run(job, task));
+        log.info("{} job {} submitted", type, job.getId());
+        return job;
+    }
+
+    private static void run(MigrationJob job, JobTask task) {
+        if (job.getControl().isCancelled()) {
+            job.finish(MigrationJob.Status.CANCELLED, null);
+            return;
+        }
+        job.start();
+        log.info("{} job {} started", job.getType(), job.getId());
+        try {
+            task.run(job);
+            job.finish(job.getControl().isCancelled() ? MigrationJob.Status.CANCELLED : MigrationJob.Status.DONE,
+                    null);
+        } catch (CancellationException e) {
+            job.finish(MigrationJob.Status.CANCELLED, null);
+        } catch (Exception e) {
+            log.error("{} job {} error : {}", job.getType(), job.getId(), e.getMessage(), e);
+            job.finish(MigrationJob.Status.FAILED, e.getMessage());
+        }
+        log.info("{} job {} {}", job.getType(), job.getId(), job.getStatus());
+    }
+
+    /**
+     * @return the job, null when there is no job with this id
+     */
+    public MigrationJob get(String id) {
+        return jobs.get(id);
+    }
+
+    public List<MigrationJob> list() {
+        List<MigrationJob> result = new ArrayList<>(jobs.values());
+        result.sort(Comparator.comparing(MigrationJob::getSubmittedAt));
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobs.values().forEach(job -> job.getControl().cancel());
+        executor.shutdownNow();
+    }
+
+    private static ThreadFactory threadFactory(boolean virtual) {
+        if (virtual) {
+            try {
+                // Thread.ofVirtual().name("m2p-job-", 1).factory(), only there on Java 21+
+                Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+                Method name = builderType.getMethod("name", String.class, long.class);
+                Method factory = builderType.getMethod("factory");
+                Object builder = name.invoke(Thread.class.getMethod("ofVirtual").invoke(null), "m2p-job-", 1L);
+                return (ThreadFactory) factory.invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                log.info("virtual threads not available, jobs run on platform threads");
+            }
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        return r -> new Thread(r, "m2p-job-" + threadIndex.incrementAndGet());
+    }
+
+    @FunctionalInterface
+    public interface JobTask {
+        void run(MigrationJob job) throws Exception;
+    }
+}
@@ -0,0 +1,57 @@
+package com.nott;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the {@link MigrationProgress} of every table of the current and past runs.
+ * A table migrated again replaces its old progress and meters.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Component
+public class MigrationMetrics {
+
+    private final MeterRegistry registry;
+
+    private final Map<String, MigrationProgress> tables = new ConcurrentHashMap<>();
+
+    public MigrationMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    public MigrationProgress start(String tableName, long totalRecords, int ranges) {
+        // the registry hands out the existing meter for a known id, so the old ones go first
+        MigrationProgress old = tables.remove(tableName);
+        if (old != null) {
+            old.close();
+        }
+        MigrationProgress progress = new MigrationProgress(tableName, totalRecords, ranges, registry);
+        tables.put(tableName, progress);
+        return progress;
+    }
+
+    /**
+     * @return the progress of the last migration of the table, null if it wasn't migrated
+     */
+    public MigrationProgress get(String tableName) {
+        return tables.get(tableName);
+    }
+
+    public List<TableMetrics> snapshot() {
+        return tables.values().stream()
+                .map(MigrationProgress::snapshot)
+                .collect(Collectors.toList());
+    }
+}
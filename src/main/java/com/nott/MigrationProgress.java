@@ -0,0 +1,267 @@
+package com.nott;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Rows moved for one table, counted per key range so chunked tables report
+ * their aggregate throughput.
+ * <p>
+ * The counters are also registered as meters tagged with the table name, so a
+ * JMX console sees the same numbers as {@link #snapshot()}.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+public class MigrationProgress {
+
+    /**
+     * LOADED tables have their rows in and wait for the statements run after the load
+     */
+    public enum Phase {
+        LOADING, LOADED, LOGGING, INDEXING, ANALYZING, DONE, FAILED, CANCELLED
+    }
+
+    @Getter
+    private final String tableName;
+
+    @Getter
+    private final long totalRecords;
+
+    @Getter
+    @Setter
+    private volatile Phase phase = Phase.LOADING;
+
+    /**
+     * rows per batch the table is read with right now
+     */
+    @Getter
+    @Setter
+    private volatile int batchSize;
+
+    private final AtomicLongArray movedPerRange;
+    private final AtomicLong moved = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong readStallNanos = new AtomicLong();
+    private final AtomicLong writeStallNanos = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private volatile long endNanos;
+
+    /**
+     * queues of the running pipelines, one per range being read
+     */
+    private final Collection<Collection<?>> queues = ConcurrentHashMap.newKeySet();
+
+    private final MeterRegistry registry;
+    private final Timer readTimer;
+    private final Timer writeTimer;
+    private final List<Meter> meters = new ArrayList<>();
+
+    public MigrationProgress(String tableName, long totalRecords, int ranges) {
+        this(tableName, totalRecords, ranges, new SimpleMeterRegistry());
+    }
+
+    public MigrationProgress(String tableName, long totalRecords, int ranges, MeterRegistry registry) {
+        this.tableName = tableName;
+        this.totalRecords = totalRecords;
+        this.movedPerRange = new AtomicLongArray(Math.max(1, ranges));
+        this.registry = registry;
+        Tags tags = Tags.of("table", tableName);
+        this.readTimer = Timer.builder("m2p.batch.read").description("time to read one batch from the source")
+                .tags(tags).publishPercentiles(0.5, 0.95, 0.99).register(registry);
+        this.writeTimer = Timer.builder("m2p.batch.write").description("time to write one batch to the target")
+                .tags(tags).publishPercentiles(0.5, 0.95, 0.99).register(registry);
+        meters.add(readTimer);
+        meters.add(writeTimer);
+        meters.add(FunctionCounter.builder("m2p.rows", moved, AtomicLong::get).tags(tags).register(registry));
+        meters.add(FunctionCounter.builder("m2p.bytes", bytes, AtomicLong::get).baseUnit("bytes").tags(tags)
+                .register(registry));
+        meters.add(FunctionCounter.builder("m2p.errors", errors, AtomicLong::get).tags(tags).register(registry));
+        meters.add(Gauge.builder("m2p.rows.per.second", this, MigrationProgress::getRowsPerSecond).tags(tags)
+                .register(registry));
+        meters.add(Gauge.builder("m2p.batch.size", this, MigrationProgress::getBatchSize).tags(tags)
+                .register(registry));
+        meters.add(Gauge.builder("m2p.queue.depth", this, MigrationProgress::getQueueDepth).tags(tags)
+                .register(registry));
+        meters.add(Gauge.builder("m2p.eta", this, MigrationProgress::getEtaSeconds).baseUnit("seconds").tags(tags)
+                .register(registry));
+    }
+
+    /**
+     * @return rows moved over all ranges
+     */
+    public long add(int range, long rows) {
+        movedPerRange.addAndGet(range, rows);
+        return moved.addAndGet(rows);
+    }
+
+    public long getMoved() {
+        return moved.get();
+    }
+
+    public long[] getMovedPerRange() {
+        long[] result = new long[movedPerRange.length()];
+        Arrays.setAll(result, movedPerRange::get);
+        return result;
+    }
+
+    public void addBytes(long bytes) {
+        this.bytes.addAndGet(bytes);
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public void addError() {
+        errors.incrementAndGet();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public void recordRead(long nanos) {
+        readTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordWrite(long nanos) {
+        writeTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void addQueue(Collection<?> queue) {
+        queues.add(queue);
+    }
+
+    public void removeQueue(Collection<?> queue) {
+        queues.remove(queue);
+    }
+
+    /**
+     * batches read but not yet taken by a writer, near the queue depth when the target is the slow side
+     */
+    public int getQueueDepth() {
+        return queues.stream().mapToInt(Collection::size).sum();
+    }
+
+    /**
+     * time the reader waited for the writers
+     */
+    public void addReadStall(long nanos) {
+        readStallNanos.addAndGet(nanos);
+    }
+
+    /**
+     * time the writers waited for the reader
+     */
+    public void addWriteStall(long nanos) {
+        writeStallNanos.addAndGet(nanos);
+    }
+
+    public long getReadStallMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(readStallNanos.get());
+    }
+
+    public long getWriteStallMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(writeStallNanos.get());
+    }
+
+    public void finish(Phase phase) {
+        this.phase = phase;
+        this.endNanos = System.nanoTime();
+    }
+
+    public long getElapsedMillis() {
+        long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+    }
+
+    public long getRowsPerSecond() {
+        long elapsedMillis = getElapsedMillis();
+        return elapsedMillis == 0 ? 0 : getMoved() * 1000 / elapsedMillis;
+    }
+
+    public long getBytesPerSecond() {
+        long elapsedMillis = getElapsedMillis();
+        return elapsedMillis == 0 ? 0 : getBytes() * 1000 / elapsedMillis;
+    }
+
+    /**
+     * @return seconds left at the current rate, -1 while there is no rate to go by
+     */
+    public long getEtaSeconds() {
+        if (phase != Phase.LOADING) {
+            return 0;
+        }
+        long rowsPerSecond = getRowsPerSecond();
+        return rowsPerSecond == 0 ? -1 : Math.max(0, totalRecords - getMoved()) / rowsPerSecond;
+    }
+
+    /**
+     * unregisters the meters of this table
+     */
+    public void close() {
+        meters.forEach(registry::remove);
+    }
+
+    public TableMetrics snapshot() {
+        TableMetrics metrics = new TableMetrics();
+        metrics.setTableName(tableName);
+        metrics.setPhase(phase);
+        metrics.setTotalRecords(totalRecords);
+        metrics.setMovedRecords(getMoved());
+        metrics.setMovedPerRange(getMovedPerRange());
+        metrics.setRowsPerSecond(getRowsPerSecond());
+        metrics.setBytes(getBytes());
+        metrics.setBytesPerSecond(getBytesPerSecond());
+        metrics.setRead(latency(readTimer));
+        metrics.setWrite(latency(writeTimer));
+        metrics.setBatchSize(batchSize);
+        metrics.setQueueDepth(getQueueDepth());
+        metrics.setReadStallMillis(getReadStallMillis());
+        metrics.setWriteStallMillis(getWriteStallMillis());
+        metrics.setErrors(getErrors());
+        metrics.setElapsedMillis(getElapsedMillis());
+        metrics.setEtaSeconds(getEtaSeconds());
+        return metrics;
+    }
+
+    private static TableMetrics.Latency latency(Timer timer) {
+        HistogramSnapshot histogram = timer.takeSnapshot();
+        TableMetrics.Latency latency = new TableMetrics.Latency();
+        latency.setBatches(histogram.count());
+        latency.setMeanMillis(histogram.mean(TimeUnit.MILLISECONDS));
+        latency.setMaxMillis(histogram.max(TimeUnit.MILLISECONDS));
+        for (ValueAtPercentile value : histogram.percentileValues()) {
+            double millis = value.value(TimeUnit.MILLISECONDS);
+            if (value.percentile() == 0.5) {
+                latency.setP50Millis(millis);
+            } else if (value.percentile() == 0.95) {
+                latency.setP95Millis(millis);
+            } else if (value.percentile() == 0.99) {
+                latency.setP99Millis(millis);
+            }
+        }
+        return latency;
+    }
+}
@@ -0,0 +1,264 @@
+package com.nott;
+
+import com.nott.config.MigrationProperties;
+import com.nott.dump.DumpWriter;
+import com.nott.schema.SchemaSnapshot;
+import com.nott.schema.TableSchema;
+import com.nott.utils.MigrationUtils;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Migrates the data of many tables on a pool of workers.
+ * <p>
+ * Tables are started largest first so the long ones don't end up alone at the tail.
+ * Every table, and every extra worker on the key ranges of a split table, holds one
+ * connection on each side from a shared {@link ConnectionBudget}, so the migration never
+ * asks a datasource for more connections than its limit. A failing table is reported in its
+ * {@link TableMigrationResult} and doesn't stop the others. Once a table is loaded its keys,
+ * indexes, sequences and logging are finished by a {@link PostLoadBuilder} while the other
+ * tables load. Given a {@link DumpWriter} the tables are exported to files instead, without
+ * a checkpoint journal and without a target, the target columns are derived from the source.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Slf4j
+public class MigrationScheduler {
+
+    private final DataSource source;
+    private final DataSource target;
+    private final MigrationProperties properties;
+    private final MigrationMetrics metrics;
+    private JobControl jobControl;
+    private DumpWriter dump;
+
+    public MigrationScheduler(DataSource source, DataSource target, MigrationProperties properties) {
+        this(source, target, properties, null);
+    }
+
+    /**
+     * @param target  may be null for an export
+     * @param metrics where the progress of the tables is published, may be null
+     */
+    public MigrationScheduler(DataSource source, DataSource target, MigrationProperties properties,
+                              MigrationMetrics metrics) {
+        this.source = source;
+        this.target = target;
+        this.properties = properties;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param jobControl pauses, cancels or throttles the migration, may be null
+     */
+    public void setJobControl(JobControl jobControl) {
+        this.jobControl = jobControl;
+    }
+
+    /**
+     * @param dump writes the tables into an export instead of the target, null to migrate
+     */
+    public void setDump(DumpWriter dump) {
+        this.dump = dump;
+    }
+
+    public List<TableMigrationResult> migrate(List<String> tableNames) throws InterruptedException, IOException {
+        int sourceLimit = getConnectionLimit(source, properties.getSourceMaxConnections());
+        int targetLimit = getConnectionLimit(target, properties.getTargetMaxConnections());
+        int workers = Math.min(Math.max(1, properties.getWorkers()), Math.min(sourceLimit, targetLimit));
+        log.info("migrating {} tables with {} workers", tableNames.size(), workers);
+        ConnectionBudget budget = new ConnectionBudget(sourceLimit, targetLimit);
+        CheckpointJournal journal = dump != null || StringUtils.isEmpty(properties.getCheckpointFile()) ? null
+                : CheckpointJournal.open(properties.getCheckpointFile(), properties.isResume(),
+                properties.getCheckpointSyncInterval());
+        Map<String, DataTableMigration> migrations = new ConcurrentHashMap<>();
+        Map<String, TableMigrationResult> results = new LinkedHashMap<>();
+        tableNames.forEach(tableName -> results.put(tableName, new TableMigrationResult(tableName)));
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers,
+                r -> new Thread(r, "m2p-worker-" + threadIndex.incrementAndGet()));
+        PostLoadBuilder postLoad = dump != null ? null : new PostLoadBuilder(target, budget, metrics,
+                properties.isBulkLoad(), properties.isFastLoad(), properties.getFastLoadMaintenanceWorkMem(),
+                properties.getIndexThreads());
+        try {
+            SchemaSnapshot sourceSchema = SchemaSnapshot.load(source);
+            SchemaSnapshot targetSchema = dump != null ? null : SchemaSnapshot.load(target);
+            countRecords(executor, results, migrations, budget, journal, sourceSchema, targetSchema);
+            List<TableMigrationResult> ordered = new ArrayList<>(results.values());
+            ordered.sort(Comparator.comparingLong(TableMigrationResult::getTotalRecords).reversed());
+
+            List<CompletableFuture<Void>> postLoads = Collections.synchronizedList(new ArrayList<>());
+            // indexes of a table start building while the next tables load
+            Consumer<TableMigrationResult> finish = result -> {
+                if (postLoad == null) {
+                    return;
+                }
+                TableSchema sourceTable = sourceSchema.getTable(result.getTableName());
+                TableSchema targetTable = targetSchema.getTable(result.getTableName());
+                if (sourceTable != null && targetTable != null) {
+                    postLoads.add(postLoad.submit(sourceTable, targetTable, result));
+                }
+            };
+            List<Future<?>> futures = new ArrayList<>();
+            for (TableMigrationResult result : ordered) {
+                if (result.getStatus() == TableMigrationResult.Status.PENDING) {
+                    DataTableMigration migration = migrations.get(result.getTableName());
+                    futures.add(executor.submit(() -> {
+                        migrateTable(migration, result, budget);
+                        if (result.getStatus() == TableMigrationResult.Status.DONE) {
+                            finish.accept(result);
+                        }
+                    }));
+                } else if (result.getStatus() == TableMigrationResult.Status.DONE) {
+                    // done in an earlier run, which may have stopped before its indexes
+                    finish.accept(result);
+                }
+            }
+            await(futures);
+            awaitPostLoads(postLoads);
+            if (dump != null) {
+                dump.finish(new ArrayList<>(results.values()));
+            }
+        } finally {
+            executor.shutdownNow();
+            if (postLoad != null) {
+                postLoad.shutdown();
+            }
+            if (journal != null) {
+                journal.sync();
+            }
+        }
+        results.values().stream()
+                .filter(result -> result.getStatus() == TableMigrationResult.Status.FAILED)
+                .forEach(result -> log.error("table {} failed: {}", result.getTableName(), result.getError()));
+        return new ArrayList<>(results.values());
+    }
+
+    private void countRecords(ExecutorService executor, Map<String, TableMigrationResult> results,
+                              Map<String, DataTableMigration> migrations, ConnectionBudget budget,
+                              CheckpointJournal journal, SchemaSnapshot sourceSchema,
+                              SchemaSnapshot targetSchema)
+            throws InterruptedException {
+        List<Future<?>> futures = new ArrayList<>();
+        for (TableMigrationResult result : results.values()) {
+            if (journal != null && journal.isDone(result.getTableName())) {
+                log.info("table {} already migrated, skip", result.getTableName());
+                result.setStatus(TableMigrationResult.Status.DONE);
+                continue;
+            }
+            futures.add(executor.submit(() -> {
+                try {
+                    TableSchema sourceTable = sourceSchema.getTable(result.getTableName());
+                    // an export writes what the DDL of the source table would create
+                    TableSchema targetTable = dump != null
+                            ? sourceTable == null ? null : MigrationUtils.toPostgresTable(sourceTable)
+                            : targetSchema.getTable(result.getTableName());
+                    DataTableMigration migration = new DataTableMigration(source, dump != null ? null : target,
+                            sourceTable, targetTable, new HashMap<>(), properties);
+                    migration.setConnectionBudget(budget);
+                    migration.setJournal(journal);
+                    migration.setMetrics(metrics);
+                    migration.setJobControl(jobControl);
+                    if (dump != null) {
+                        migration.setDump(dump);
+                    } else {
+                        migration.setPostLoad(true);
+                    }
+                    result.setTotalRecords(migration.getTotalRecords());
+                    migrations.put(result.getTableName(), migration);
+                } catch (Exception e) {
+                    fail(result, e);
+                }
+            }));
+        }
+        await(futures);
+    }
+
+    private void migrateTable(DataTableMigration migration, TableMigrationResult result, ConnectionBudget budget) {
+        String tableName = result.getTableName();
+        long start = System.currentTimeMillis();
+        try {
+            if (jobControl != null) {
+                jobControl.checkpoint(0);
+            }
+            budget.acquire();
+            try {
+                migration.migrate(tableName, tableName);
+                result.setStatus(TableMigrationResult.Status.DONE);
+            } finally {
+                budget.release();
+            }
+        } catch (CancellationException e) {
+            log.info("table {} cancelled", tableName);
+            result.setStatus(TableMigrationResult.Status.CANCELLED);
+        } catch (Exception e) {
+            fail(result, e);
+        } finally {
+            result.setElapsedMillis(System.currentTimeMillis() - start);
+            result.getPhaseMillis().put(MigrationProgress.Phase.LOADING, result.getElapsedMillis());
+        }
+    }
+
+    private static void fail(TableMigrationResult result, Exception e) {
+        log.error("migrate table {} error : {}", result.getTableName(), e.getMessage(), e);
+        result.setStatus(TableMigrationResult.Status.FAILED);
+        result.setError(e.getMessage());
+    }
+
+    private static void awaitPostLoads(List<CompletableFuture<Void>> postLoads) throws InterruptedException {
+        try {
+            CompletableFuture.allOf(postLoads.toArray(new CompletableFuture[0])).get();
+        } catch (ExecutionException e) {
+            // statements record their own failures
+            log.error("post load error : {}", e.getMessage(), e);
+        }
+    }
+
+    private static void await(List<Future<?>> futures) throws InterruptedException {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                // tasks record their own failures
+                log.error("worker error : {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * @param configured the limit from the configuration, 0 to derive it from the pool,
+     *                   keeping one connection for the caller that reads the table list
+     */
+    private static int getConnectionLimit(DataSource dataSource, int configured) {
+        if (configured > 0) {
+            return configured;
+        }
+        if (dataSource instanceof HikariDataSource) {
+            return Math.max(1, ((HikariDataSource) dataSource).getMaximumPoolSize() - 1);
+        }
+        return Integer.MAX_VALUE;
+    }
+}
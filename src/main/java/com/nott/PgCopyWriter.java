@@ -0,0 +1,436 @@
+package com.nott;
+
+import com.nott.schema.ColumnSchema;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.temporal.Temporal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes rows into a PostgreSQL table with {@code COPY ... FROM STDIN}.
+ * <p>
+ * Values are encoded in the COPY text format, see
+ * <a href="https://www.postgresql.org/docs/current/sql-copy.html">COPY</a>.
+ * Every {@link #write(RowBatch, LobColumns)} call is one COPY, so one transaction, on the target.
+ * {@link #writeTo} encodes the same text into a stream, for a dump to be copied in later.
+ * <p>
+ * PostgreSQL text can't hold NUL, a row with a NUL in a text value fails the write unless
+ * {@link #setStripNul stripping} is on, which drops the NULs and logs and counts the row.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Slf4j
+public class PgCopyWriter {
+
+    private static final int FLUSH_SIZE = 64 * 1024;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final JdbcTemplate targetJdbc;
+    private final String tableName;
+    private final String[] columns;
+    private final String copySql;
+    private final String selectSql;
+    private final int columnCount;
+
+    /**
+     * target type name and precision per column, loaded on the first write
+     */
+    private String[] columnTypes;
+    private int[] columnPrecisions;
+
+    private boolean stripNul;
+
+    /**
+     * position of the key columns in a row, to name a row with a NUL
+     */
+    private int[] keyIndexes = new int[0];
+    private final AtomicLong nulStrippedRows = new AtomicLong();
+
+    public PgCopyWriter(JdbcTemplate targetJdbc, String tableName, String[] columns) {
+        this.targetJdbc = targetJdbc;
+        this.tableName = tableName;
+        this.columns = columns;
+        this.columnCount = columns.length;
+        this.copySql = String.format("COPY %s (%s) FROM STDIN", tableName, String.join(",", columns));
+        this.selectSql = String.format("select %s from %s where 1 = 0", String.join(",", columns), tableName);
+    }
+
+    public String getCopySql() {
+        return copySql;
+    }
+
+    public void setStripNul(boolean stripNul) {
+        this.stripNul = stripNul;
+    }
+
+    public void setKeyIndexes(int[] keyIndexes) {
+        this.keyIndexes = keyIndexes;
+    }
+
+    /**
+     * @return rows written with their NUL characters dropped
+     */
+    public long getNulStrippedRows() {
+        return nulStrippedRows.get();
+    }
+
+    /**
+     * @param rows values in the order of the columns given to the constructor, extra columns are left out
+     * @param lobs the values of these columns not read with their rows are streamed in, may be null
+     */
+    public long write(RowBatch rows, LobColumns lobs) {
+        loadColumnTypes();
+        return targetJdbc.execute((ConnectionCallback<Long>) con -> {
+            CopyManager copyManager = new CopyManager(con.unwrap(BaseConnection.class));
+            CopyIn copyIn = copyManager.copyIn(copySql);
+            try {
+                CopyBuffer buffer = new CopyBuffer(FLUSH_SIZE + 1024, copyIn::writeToCopy);
+                for (int row = 0; row < rows.size(); row++) {
+                    appendRow(buffer, rows, row, lobs);
+                    buffer.flushIfFull();
+                }
+                buffer.flush();
+                return copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        });
+    }
+
+    /**
+     * encodes the rows as {@link #write} would send them
+     */
+    public void writeTo(RowBatch rows, LobColumns lobs, OutputStream out) throws SQLException {
+        loadColumnTypes();
+        CopyBuffer buffer = new CopyBuffer(FLUSH_SIZE + 1024, (bytes, offset, length) -> {
+            try {
+                out.write(bytes, offset, length);
+            } catch (IOException e) {
+                throw new SQLException("write copy data error", e);
+            }
+        });
+        for (int row = 0; row < rows.size(); row++) {
+            appendRow(buffer, rows, row, lobs);
+            buffer.flushIfFull();
+        }
+        buffer.flush();
+    }
+
+    /**
+     * takes the column types instead of asking the target for them
+     *
+     * @param columns the target columns in the order of the constructor, typed by their udt_name
+     */
+    public void setColumnTypes(List<ColumnSchema> columns) {
+        String[] types = new String[columnCount];
+        int[] precisions = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            types[i] = columns.get(i).getColumnType().toLowerCase();
+            Long length = columns.get(i).getCharacterMaximumLength();
+            precisions[i] = length == null ? 0 : length.intValue();
+        }
+        this.columnPrecisions = precisions;
+        this.columnTypes = types;
+    }
+
+    /**
+     * @return the udt_name of every column
+     */
+    public String[] getColumnTypes() {
+        loadColumnTypes();
+        return columnTypes;
+    }
+
+    void loadColumnTypes() {
+        if (columnTypes != null) {
+            return;
+        }
+        targetJdbc.query(selectSql, rs -> {
+            ResultSetMetaData metaData = rs.getMetaData();
+            String[] types = new String[columnCount];
+            int[] precisions = new int[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                types[i] = metaData.getColumnTypeName(i + 1).toLowerCase();
+                precisions[i] = metaData.getPrecision(i + 1);
+            }
+            this.columnPrecisions = precisions;
+            this.columnTypes = types;
+            return null;
+        });
+    }
+
+    /**
+     * encodes one row as a line of COPY text, {@link #loadColumnTypes()} must have run
+     */
+    void appendRow(CopyBuffer buffer, RowBatch rows, int row, LobColumns lobs) throws SQLException {
+        int nulColumn = -1;
+        for (int i = 0; i < columnCount; i++) {
+            if (i > 0) {
+                buffer.append((byte) '\t');
+            }
+            int nuls = buffer.nuls;
+            if (lobs != null && lobs.isDeferred(rows, i, row)) {
+                appendLob(buffer, rows, i, row, lobs);
+            } else if (rows.isNull(i, row)) {
+                buffer.append("\\N");
+            } else {
+                appendValue(buffer, rows, i, row);
+            }
+            if (buffer.nuls > nuls && nulColumn < 0) {
+                nulColumn = i;
+            }
+        }
+        buffer.append((byte) '\n');
+        if (nulColumn >= 0) {
+            onNul(rows, row, nulColumn);
+        }
+    }
+
+    private void onNul(RowBatch rows, int row, int column) throws SQLException {
+        Object[] key = new Object[keyIndexes.length];
+        for (int i = 0; i < keyIndexes.length; i++) {
+            key[i] = rows.getValue(keyIndexes[i], row);
+        }
+        if (!stripNul) {
+            throw new SQLException(String.format("table %s column %s of row %s holds a NUL character, which "
+                    + "PostgreSQL text can't store, set copy-strip-nul to drop it", tableName, columns[column],
+                    Arrays.toString(key)));
+        }
+        log.warn("table {} column {} of row {}: NUL characters dropped, {} rows so far", tableName, columns[column],
+                Arrays.toString(key), nulStrippedRows.incrementAndGet());
+    }
+
+    /**
+     * primitive columns are printed and text is escaped straight from the batch, without
+     * an object per value
+     */
+    private void appendValue(CopyBuffer buffer, RowBatch rows, int column, int row) {
+        switch (rows.getType(column)) {
+            case INT:
+            case LONG:
+                buffer.appendLong(rows.getLong(column, row));
+                break;
+            case BOOLEAN:
+                // accepted by boolean, bit and the smallint that tinyint(1) is mapped to
+                buffer.append((byte) (rows.getBoolean(column, row) ? '1' : '0'));
+                break;
+            case STRING:
+                appendText(buffer, rows.getByteView(column, row));
+                break;
+            case BYTES:
+                if (isBitColumn(column)) {
+                    appendBits(buffer, rows.getBytes(column, row), columnPrecisions[column]);
+                } else {
+                    appendBytea(buffer, rows.getByteView(column, row));
+                }
+                break;
+            default:
+                appendValue(buffer, rows.getValue(column, row), column);
+        }
+    }
+
+    private void appendValue(CopyBuffer buffer, Object value, int column) {
+        if (value instanceof Boolean) {
+            buffer.append((byte) ((Boolean) value ? '1' : '0'));
+        } else if (value instanceof BigDecimal) {
+            buffer.append(((BigDecimal) value).toPlainString());
+        } else if (value instanceof Number) {
+            buffer.append(value.toString());
+        } else if (value instanceof Timestamp || value instanceof java.sql.Date || value instanceof Time
+                || value instanceof Temporal) {
+            // print ISO values PostgreSQL parses
+            buffer.append(value.toString());
+        } else if (value instanceof java.util.Date) {
+            buffer.append(new Timestamp(((java.util.Date) value).getTime()).toString());
+        } else if (value instanceof byte[] && isBitColumn(column)) {
+            appendBits(buffer, (byte[]) value, columnPrecisions[column]);
+        } else if (value instanceof byte[]) {
+            appendBytea(buffer, ByteBuffer.wrap((byte[]) value));
+        } else {
+            appendText(buffer, ByteBuffer.wrap(value.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    /**
+     * streams a large value chunk by chunk, the buffer is sent whenever it fills up
+     */
+    private static void appendLob(CopyBuffer buffer, RowBatch rows, int column, int row, LobColumns lobs)
+            throws SQLException {
+        if (lobs.isBinary(column)) {
+            buffer.append("\\\\x");
+            lobs.read(rows, column, row, chunk -> {
+                appendHex(buffer, ByteBuffer.wrap(chunk));
+                buffer.flushIfFull();
+            });
+        } else {
+            lobs.read(rows, column, row, chunk -> {
+                appendText(buffer, ByteBuffer.wrap(chunk));
+                buffer.flushIfFull();
+            });
+        }
+    }
+
+    private boolean isBitColumn(int column) {
+        return columnTypes[column].equals("bit") || columnTypes[column].equals("varbit");
+    }
+
+    /**
+     * {@code \\x} hex form, the backslash itself is escaped for the COPY text format
+     */
+    private static void appendBytea(CopyBuffer buffer, ByteBuffer bytes) {
+        buffer.append("\\\\x");
+        appendHex(buffer, bytes);
+    }
+
+    private static void appendHex(CopyBuffer buffer, ByteBuffer bytes) {
+        while (bytes.hasRemaining()) {
+            byte b = bytes.get();
+            buffer.append(HEX[(b >> 4) & 0xF]);
+            buffer.append(HEX[b & 0xF]);
+        }
+    }
+
+    /**
+     * MySQL returns BIT(n) as big-endian bytes, PostgreSQL wants exactly n binary digits
+     */
+    private static void appendBits(CopyBuffer buffer, byte[] bytes, int precision) {
+        int bits = bytes.length * 8;
+        int skip = precision > 0 && bits > precision ? bits - precision : 0;
+        for (int i = skip; i < bits; i++) {
+            buffer.append((byte) ('0' + ((bytes[i / 8] >> (7 - i % 8)) & 1)));
+        }
+    }
+
+    /**
+     * escapes UTF-8 text byte by byte, the escaped characters are ASCII and never part of
+     * a multi-byte sequence, NULs are left out and counted on the buffer
+     */
+    private static void appendText(CopyBuffer buffer, ByteBuffer text) {
+        while (text.hasRemaining()) {
+            byte b = text.get();
+            switch (b) {
+                case '\\':
+                    buffer.append("\\\\");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                case 0:
+                    buffer.nuls++;
+                    break;
+                default:
+                    buffer.append(b);
+            }
+        }
+    }
+
+    /**
+     * bytes of the COPY stream not yet sent
+     */
+    interface CopySink {
+        void write(byte[] bytes, int offset, int length) throws SQLException;
+    }
+
+    static class CopyBuffer {
+        private final CopySink sink;
+        private byte[] bytes;
+        private int length;
+
+        /**
+         * NUL characters left out of the text so far
+         */
+        private int nuls;
+
+        CopyBuffer(int capacity, CopySink sink) {
+            this.bytes = new byte[capacity];
+            this.sink = sink;
+        }
+
+        void append(byte b) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = b;
+        }
+
+        void append(char c) {
+            append((byte) c);
+        }
+
+        /**
+         * @param ascii text without characters past 127
+         */
+        void append(String ascii) {
+            for (int i = 0; i < ascii.length(); i++) {
+                append((byte) ascii.charAt(i));
+            }
+        }
+
+        void appendLong(long value) {
+            if (value == Long.MIN_VALUE) {
+                append(Long.toString(value));
+                return;
+            }
+            if (value < 0) {
+                append((byte) '-');
+                value = -value;
+            }
+            int start = length;
+            do {
+                append((byte) ('0' + value % 10));
+                value /= 10;
+            } while (value > 0);
+            for (int i = start, j = length - 1; i < j; i++, j--) {
+                byte b = bytes[i];
+                bytes[i] = bytes[j];
+                bytes[j] = b;
+            }
+        }
+
+        void flushIfFull() throws SQLException {
+            if (length >= FLUSH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() throws SQLException {
+            if (length == 0) {
+                return;
+            }
+            sink.write(bytes, 0, length);
+            length = 0;
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
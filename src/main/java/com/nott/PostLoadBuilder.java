@@ -0,0 +1,219 @@
+package com.nott;
+
+import com.nott.schema.ColumnSchema;
+import com.nott.schema.IndexSchema;
+import com.nott.schema.TableSchema;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finishes a table once its rows are in.
+ * <p>
+ * In bulk load mode the tables are created without keys or indexes, so the rows go in
+ * without index maintenance. Afterwards the primary key is added, then the secondary
+ * indexes of the MySQL table are built, several at a time and across tables. Every
+ * serial column gets its sequence moved past the largest migrated value in either mode,
+ * so new rows don't collide with migrated ones.
+ * <p>
+ * In fast load mode the tables are loaded UNLOGGED, so a crash empties them. They are set
+ * LOGGED first, which writes them to the WAL once and makes them durable, then indexed,
+ * so the indexes aren't rewritten, and analyzed last.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Slf4j
+public class PostLoadBuilder {
+
+    /**
+     * longest identifier PostgreSQL keeps
+     */
+    private static final int MAX_NAME_LENGTH = 63;
+
+    private final JdbcTemplate targetJdbc;
+    private final ConnectionBudget budget;
+    private final MigrationMetrics metrics;
+    private final boolean bulkLoad;
+    private final boolean fastLoad;
+    private final String maintenanceWorkMem;
+    private final ExecutorService executor;
+
+    /**
+     * @param metrics            where the tables show their phase, may be null
+     * @param maintenanceWorkMem set for the statements of a fast load only
+     */
+    public PostLoadBuilder(DataSource target, ConnectionBudget budget, MigrationMetrics metrics, boolean bulkLoad,
+                           boolean fastLoad, String maintenanceWorkMem, int threads) {
+        this.targetJdbc = new JdbcTemplate(target);
+        this.budget = budget;
+        this.metrics = metrics;
+        this.bulkLoad = bulkLoad;
+        this.fastLoad = fastLoad;
+        this.maintenanceWorkMem = maintenanceWorkMem;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads),
+                r -> new Thread(r, "m2p-index-" + threadIndex.incrementAndGet()));
+    }
+
+    /**
+     * @return completes when every statement of the table ran, failures are added to the result
+     */
+    public CompletableFuture<Void> submit(TableSchema sourceTable, TableSchema targetTable,
+                                          TableMigrationResult result) {
+        String tableName = targetTable.getName();
+        MigrationProgress progress = metrics == null ? null : metrics.get(result.getTableName());
+        CompletableFuture<Void> logged = CompletableFuture.completedFuture(null);
+        if (fastLoad) {
+            long start = enter(result, progress, MigrationProgress.Phase.LOGGING);
+            logged = run(result, String.format("alter table %s set logged", tableName))
+                    .thenAccept(ok -> {
+                        leave(result, MigrationProgress.Phase.LOGGING, start);
+                        if (ok) {
+                            log.info("table {} is logged", tableName);
+                        } else {
+                            log.warn("table {} is still unlogged, a crash empties it", tableName);
+                        }
+                    });
+        }
+        CompletableFuture<Void> indexed = logged.thenCompose(ignored -> buildIndexes(sourceTable, targetTable,
+                result, progress));
+        CompletableFuture<Void> analyzed = indexed;
+        if (fastLoad) {
+            analyzed = indexed.thenCompose(ignored -> {
+                long start = enter(result, progress, MigrationProgress.Phase.ANALYZING);
+                return run(result, "analyze " + tableName)
+                        .thenRun(() -> leave(result, MigrationProgress.Phase.ANALYZING, start));
+            });
+        }
+        return analyzed.thenRun(() -> {
+            if (progress != null) {
+                // the load set the time the rows per second are counted over
+                progress.setPhase(MigrationProgress.Phase.DONE);
+            }
+        });
+    }
+
+    private CompletableFuture<Void> buildIndexes(TableSchema sourceTable, TableSchema targetTable,
+                                                 TableMigrationResult result, MigrationProgress progress) {
+        String tableName = targetTable.getName();
+        long start = enter(result, progress, MigrationProgress.Phase.INDEXING);
+        CompletableFuture<Boolean> primaryKey = CompletableFuture.completedFuture(true);
+        List<CompletableFuture<Boolean>> statements = new ArrayList<>();
+        if (bulkLoad) {
+            if (!sourceTable.getPrimaryKey().isEmpty() && targetTable.getPrimaryKey().isEmpty()) {
+                // takes an exclusive lock on the table, the indexes wait for it
+                primaryKey = run(result, String.format("alter table %s add primary key (%s)", tableName,
+                        String.join(",", sourceTable.getPrimaryKey())));
+            }
+            for (IndexSchema index : sourceTable.getIndexes()) {
+                if (!index.isPrimary()) {
+                    statements.add(primaryKey.thenCompose(ignored ->
+                            run(result, getCreateIndexSql(tableName, index))));
+                }
+            }
+        }
+        statements.add(primaryKey);
+        for (ColumnSchema column : targetTable.getColumns()) {
+            if (column.isAutoIncrement()) {
+                statements.add(run(result, String.format(
+                        "select setval(pg_get_serial_sequence('%1$s', '%2$s'), coalesce(max(%2$s), 0) + 1, false)"
+                                + " from %1$s", tableName, column.getName())));
+            }
+        }
+        return CompletableFuture.allOf(statements.toArray(new CompletableFuture[0]))
+                .thenRun(() -> leave(result, MigrationProgress.Phase.INDEXING, start));
+    }
+
+    private static long enter(TableMigrationResult result, MigrationProgress progress, MigrationProgress.Phase phase) {
+        log.info("table {} {}", result.getTableName(), phase.name().toLowerCase());
+        if (progress != null) {
+            progress.setPhase(phase);
+        }
+        return System.currentTimeMillis();
+    }
+
+    private static void leave(TableMigrationResult result, MigrationProgress.Phase phase, long start) {
+        result.getPhaseMillis().put(phase, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return completes with false if the statement failed
+     */
+    private CompletableFuture<Boolean> run(TableMigrationResult result, String sql) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                budget.acquireTarget();
+                try {
+                    execute(sql);
+                } finally {
+                    budget.releaseTarget();
+                }
+                log.info("{} done in {} ms", sql, System.currentTimeMillis() - start);
+                return true;
+            } catch (Exception e) {
+                log.error("{} error : {}", sql, e.getMessage(), e);
+                synchronized (result) {
+                    result.setError(result.getError() == null ? e.getMessage()
+                            : result.getError() + "; " + e.getMessage());
+                }
+                return false;
+            }
+        }, executor);
+    }
+
+    /**
+     * in fast load mode the statement runs in a transaction of its own, so its
+     * maintenance_work_mem ends with it instead of staying on the pooled connection
+     */
+    private void execute(String sql) {
+        if (!fastLoad) {
+            targetJdbc.execute(sql);
+            return;
+        }
+        targetJdbc.execute((ConnectionCallback<Void>) con -> {
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try (Statement statement = con.createStatement()) {
+                statement.execute(String.format("set local maintenance_work_mem = '%s'",
+                        maintenanceWorkMem.replace("'", "''")));
+                statement.execute(sql);
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * MySQL index names are per table, PostgreSQL's per schema, so the table name goes in front
+     */
+    static String getCreateIndexSql(String tableName, IndexSchema index) {
+        String name = (tableName + "_" + index.getName()).toLowerCase();
+        if (name.length() > MAX_NAME_LENGTH) {
+            name = name.substring(0, MAX_NAME_LENGTH - 9) + "_" + Integer.toHexString(name.hashCode());
+        }
+        return String.format("create %sindex if not exists %s on %s (%s)", index.isUnique() ? "unique " : "",
+                name, tableName, String.join(",", index.getColumns()));
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
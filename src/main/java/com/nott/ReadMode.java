@@ -0,0 +1,26 @@
+package com.nott;
+
+/**
+ * How {@link CommonMigration} pages through the source table.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+public enum ReadMode {
+
+    /**
+     * legacy {@code limit ?,?} paging, every page scans and skips {@code offset} rows
+     */
+    OFFSET,
+
+    /**
+     * seek on the primary key ({@code where pk > ? order by pk limit ?}),
+     * tables without a primary key fall back to {@link #STREAM}
+     */
+    KEYSET,
+
+    /**
+     * one streaming cursor per table
+     */
+    STREAM
+}
@@ -0,0 +1,426 @@
+package com.nott;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * A batch of rows stored by column.
+ * <p>
+ * Integer, floating point, boolean and temporal columns live in primitive arrays,
+ * timestamps as microseconds of the wall clock, dates as epoch days and times as
+ * milliseconds. Text is kept UTF-8 encoded and binary as is in one byte buffer per
+ * column, optionally off the heap. Only decimals and columns of other types keep an
+ * object per value. A batch of a few thousand rows is so a handful of arrays instead
+ * of an object per cell, and it is reused through its {@link RowBatchPool}.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+public class RowBatch {
+
+    public enum Type {
+        INT, LONG, FLOAT, DOUBLE, BOOLEAN, TIMESTAMP, DATE, TIME, STRING, BYTES, OBJECT;
+
+        boolean isPrimitive() {
+            return this == INT || this == LONG || this == BOOLEAN || this == TIMESTAMP || this == DATE || this == TIME;
+        }
+
+        boolean isFloating() {
+            return this == FLOAT || this == DOUBLE;
+        }
+
+        boolean isBytes() {
+            return this == STRING || this == BYTES;
+        }
+    }
+
+    private static final int INITIAL_BYTES = 4096;
+
+    private final Type[] types;
+    private final boolean offHeap;
+    private final RowBatchPool pool;
+
+    private int size;
+    private int capacity;
+    private final boolean[][] nulls;
+    private final long[][] longs;
+    private final double[][] doubles;
+    private final Object[][] objects;
+
+    /**
+     * bytes of a text or binary column, {@code offsets[c][r]} is where value r starts,
+     * value r ends where value r + 1 starts
+     */
+    private final ByteBuffer[] bytes;
+    private final int[][] offsets;
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private byte[] scratch = new byte[0];
+
+    RowBatch(Type[] types, int capacity, boolean offHeap, RowBatchPool pool) {
+        this.types = types;
+        this.offHeap = offHeap;
+        this.pool = pool;
+        this.capacity = Math.max(1, capacity);
+        this.nulls = new boolean[types.length][];
+        this.longs = new long[types.length][];
+        this.doubles = new double[types.length][];
+        this.objects = new Object[types.length][];
+        this.bytes = new ByteBuffer[types.length];
+        this.offsets = new int[types.length][];
+        for (int c = 0; c < types.length; c++) {
+            nulls[c] = new boolean[this.capacity];
+            if (types[c].isPrimitive()) {
+                longs[c] = new long[this.capacity];
+            } else if (types[c].isFloating()) {
+                doubles[c] = new double[this.capacity];
+            } else if (types[c].isBytes()) {
+                bytes[c] = allocate(INITIAL_BYTES);
+                offsets[c] = new int[this.capacity + 1];
+            } else {
+                objects[c] = new Object[this.capacity];
+            }
+        }
+    }
+
+    /**
+     * @return a standalone batch that is not returned to a pool
+     */
+    public static RowBatch of(Type[] types, int capacity) {
+        return new RowBatch(types, capacity, false, null);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getColumnCount() {
+        return types.length;
+    }
+
+    public Type getType(int column) {
+        return types[column];
+    }
+
+    /**
+     * starts a new row, whose columns are then set in any order
+     *
+     * @return index of the row
+     */
+    public int addRow() {
+        if (size == capacity) {
+            grow();
+        }
+        for (int c = 0; c < types.length; c++) {
+            if (offsets[c] != null) {
+                offsets[c][size + 1] = offsets[c][size];
+            }
+        }
+        return size++;
+    }
+
+    public void setNull(int column, int row) {
+        nulls[column][row] = true;
+        if (objects[column] != null) {
+            objects[column][row] = null;
+        }
+    }
+
+    public void setLong(int column, int row, long value) {
+        nulls[column][row] = false;
+        longs[column][row] = value;
+    }
+
+    public void setDouble(int column, int row, double value) {
+        nulls[column][row] = false;
+        doubles[column][row] = value;
+    }
+
+    public void setBoolean(int column, int row, boolean value) {
+        setLong(column, row, value ? 1 : 0);
+    }
+
+    public void setTimestamp(int column, int row, LocalDateTime value) {
+        setLong(column, row, value.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + value.getNano() / 1000);
+    }
+
+    public void setDate(int column, int row, LocalDate value) {
+        setLong(column, row, value.toEpochDay());
+    }
+
+    public void setTime(int column, int row, Time value) {
+        setLong(column, row, value.getTime());
+    }
+
+    public void setObject(int column, int row, Object value) {
+        nulls[column][row] = value == null;
+        objects[column][row] = value;
+    }
+
+    /**
+     * encodes the text into the column, the row must be the last one added
+     */
+    public void setString(int column, int row, String value) {
+        nulls[column][row] = false;
+        ByteBuffer buffer = bytes[column];
+        buffer.position(offsets[column][row]);
+        CharBuffer chars = CharBuffer.wrap(value);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                buffer = growBytes(column, (int) (chars.remaining() * encoder.maxBytesPerChar()));
+                continue;
+            }
+            if (encoder.flush(buffer).isOverflow()) {
+                buffer = growBytes(column, 8);
+                continue;
+            }
+            break;
+        }
+        offsets[column][row + 1] = buffer.position();
+    }
+
+    /**
+     * copies the bytes into the column, the row must be the last one added
+     */
+    public void setBytes(int column, int row, byte[] value) {
+        nulls[column][row] = false;
+        ByteBuffer buffer = bytes[column];
+        int start = offsets[column][row];
+        buffer.position(start);
+        if (buffer.remaining() < value.length) {
+            buffer = growBytes(column, value.length);
+        }
+        buffer.put(value);
+        offsets[column][row + 1] = start + value.length;
+    }
+
+    public boolean isNull(int column, int row) {
+        return nulls[column][row];
+    }
+
+    public long getLong(int column, int row) {
+        return longs[column][row];
+    }
+
+    public double getDouble(int column, int row) {
+        return doubles[column][row];
+    }
+
+    public boolean getBoolean(int column, int row) {
+        return longs[column][row] != 0;
+    }
+
+    public LocalDateTime getTimestamp(int column, int row) {
+        long micros = longs[column][row];
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1000, ZoneOffset.UTC);
+    }
+
+    public LocalDate getDate(int column, int row) {
+        return LocalDate.ofEpochDay(longs[column][row]);
+    }
+
+    public Time getTime(int column, int row) {
+        return new Time(longs[column][row]);
+    }
+
+    public String getString(int column, int row) {
+        int start = offsets[column][row];
+        int length = offsets[column][row + 1] - start;
+        ByteBuffer buffer = bytes[column];
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, length, StandardCharsets.UTF_8);
+        }
+        return new String(copy(buffer, start, length), 0, length, StandardCharsets.UTF_8);
+    }
+
+    public byte[] getBytes(int column, int row) {
+        int start = offsets[column][row];
+        int length = offsets[column][row + 1] - start;
+        byte[] value = new byte[length];
+        ByteBuffer view = bytes[column].duplicate();
+        view.position(start);
+        view.get(value);
+        return value;
+    }
+
+    /**
+     * @return a read-only view of the bytes of a text or binary value, valid until the batch is recycled
+     */
+    public ByteBuffer getByteView(int column, int row) {
+        ByteBuffer view = bytes[column].duplicate();
+        view.limit(offsets[column][row + 1]);
+        view.position(offsets[column][row]);
+        return view.asReadOnlyBuffer();
+    }
+
+    public Object getObject(int column, int row) {
+        return objects[column][row];
+    }
+
+    /**
+     * @return the value boxed as the JDBC driver would have returned it, null for null
+     */
+    public Object getValue(int column, int row) {
+        if (nulls[column][row]) {
+            return null;
+        }
+        switch (types[column]) {
+            case INT:
+                return (int) longs[column][row];
+            case LONG:
+                return longs[column][row];
+            case FLOAT:
+                return (float) doubles[column][row];
+            case DOUBLE:
+                return doubles[column][row];
+            case BOOLEAN:
+                return getBoolean(column, row);
+            case TIMESTAMP:
+                return getTimestamp(column, row);
+            case DATE:
+                return getDate(column, row);
+            case TIME:
+                return getTime(column, row);
+            case STRING:
+                return getString(column, row);
+            case BYTES:
+                return getBytes(column, row);
+            default:
+                return objects[column][row];
+        }
+    }
+
+    /**
+     * rough size of the rows in memory, enough to compare the bytes/s of tables
+     */
+    public long estimateBytes() {
+        long estimate = 0;
+        for (int c = 0; c < types.length; c++) {
+            if (offsets[c] != null) {
+                estimate += offsets[c][size];
+            } else if (objects[c] != null) {
+                for (int r = 0; r < size; r++) {
+                    Object value = objects[c][r];
+                    estimate += value == null ? 0 : value instanceof BigDecimal
+                            ? ((BigDecimal) value).unscaledValue().bitLength() / 8 + 1 : 8;
+                }
+            } else {
+                estimate += 8L * size;
+            }
+        }
+        return estimate;
+    }
+
+    /**
+     * empties the batch, keeping its arrays and buffers
+     */
+    public void clear() {
+        for (int c = 0; c < types.length; c++) {
+            if (objects[c] != null) {
+                Arrays.fill(objects[c], 0, size, null);
+            }
+        }
+        size = 0;
+    }
+
+    /**
+     * hands the batch back to its pool, it must not be used after
+     */
+    public void recycle() {
+        if (pool != null) {
+            pool.release(this);
+        }
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    long getByteCapacity() {
+        long capacity = 0;
+        for (ByteBuffer buffer : bytes) {
+            capacity += buffer == null ? 0 : buffer.capacity();
+        }
+        return capacity;
+    }
+
+    /**
+     * drops byte buffers grown past {@code maxBytes}, so one batch of large values
+     * doesn't keep its memory in the pool
+     */
+    void trimBytes(long maxBytes) {
+        for (int c = 0; c < types.length; c++) {
+            if (bytes[c] != null && bytes[c].capacity() > maxBytes) {
+                bytes[c] = allocate(INITIAL_BYTES);
+            }
+        }
+    }
+
+    private void grow() {
+        int newCapacity = capacity * 2;
+        for (int c = 0; c < types.length; c++) {
+            nulls[c] = Arrays.copyOf(nulls[c], newCapacity);
+            if (longs[c] != null) {
+                longs[c] = Arrays.copyOf(longs[c], newCapacity);
+            }
+            if (doubles[c] != null) {
+                doubles[c] = Arrays.copyOf(doubles[c], newCapacity);
+            }
+            if (objects[c] != null) {
+                objects[c] = Arrays.copyOf(objects[c], newCapacity);
+            }
+            if (offsets[c] != null) {
+                offsets[c] = Arrays.copyOf(offsets[c], newCapacity + 1);
+            }
+        }
+        capacity = newCapacity;
+    }
+
+    /**
+     * @return the buffer of the column with room for {@code needed} more bytes past its position
+     */
+    private ByteBuffer growBytes(int column, int needed) {
+        ByteBuffer old = bytes[column];
+        int used = old.position();
+        ByteBuffer grown = allocate((int) Math.min(Integer.MAX_VALUE - 8,
+                Math.max((long) old.capacity() * 2, (long) used + needed)));
+        old.flip();
+        grown.put(old);
+        bytes[column] = grown;
+        return grown;
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private byte[] copy(ByteBuffer buffer, int start, int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        ByteBuffer view = buffer.duplicate();
+        view.position(start);
+        view.get(scratch, 0, length);
+        return scratch;
+    }
+}
@@ -0,0 +1,52 @@
+package com.nott;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Recycles the {@link RowBatch}es of one table, so the reader fills the arrays and
+ * buffers the writers are done with instead of allocating new ones for every batch.
+ * <p>
+ * The pool keeps at most {@code maxIdle} batches, about what the queue and the writers
+ * of a table hold, more are left to the garbage collector.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+public class RowBatchPool {
+
+    private final RowBatch.Type[] types;
+    private final boolean offHeap;
+    private final long maxBytes;
+    private final BlockingQueue<RowBatch> idle;
+
+    /**
+     * @param offHeap  keep text and binary values in direct buffers
+     * @param maxBytes byte buffers grown past this size are dropped when their batch is recycled
+     */
+    public RowBatchPool(RowBatch.Type[] types, int maxIdle, boolean offHeap, long maxBytes) {
+        this.types = types;
+        this.offHeap = offHeap;
+        this.maxBytes = maxBytes;
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, maxIdle));
+    }
+
+    /**
+     * @return an empty batch
+     */
+    public RowBatch acquire(int capacity) {
+        RowBatch batch = idle.poll();
+        return batch != null ? batch : new RowBatch(types, capacity, offHeap, this);
+    }
+
+    void release(RowBatch batch) {
+        batch.clear();
+        batch.trimBytes(maxBytes);
+        idle.offer(batch);
+    }
+
+    public int getIdle() {
+        return idle.size();
+    }
+}
@@ -0,0 +1,411 @@
+package com.nott;
+
+import com.nott.schema.ColumnSchema;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Moves a row from a source {@link ResultSet} into the insert of the target table.
+ * <p>
+ * The source query selects the columns in the order of the target insert, so source
+ * column {@code i} is bound to parameter {@code i}. The accessor of every column is
+ * picked once per table from the type of the target column, the hot path only calls
+ * the matching {@code getLong}/{@code setLong} style methods and keeps the values in
+ * the primitive columns of a {@link RowBatch}.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+public class RowConverter {
+
+    private final Accessor[] accessors;
+    private final RowBatch.Type[] types;
+    private final int targetColumns;
+
+    private RowConverter(Accessor[] accessors, int targetColumns) {
+        this.accessors = accessors;
+        this.targetColumns = targetColumns;
+        this.types = new RowBatch.Type[accessors.length];
+        for (int i = 0; i < accessors.length; i++) {
+            types[i] = accessors[i].type;
+        }
+    }
+
+    /**
+     * @param target       metadata of the target columns, in insert order
+     * @param extraColumns columns the source query selects after the target columns,
+     *                     read as they are and never bound
+     */
+    public static RowConverter compile(ResultSetMetaData target, int extraColumns) throws SQLException {
+        int targetColumns = target.getColumnCount();
+        Accessor[] accessors = new Accessor[targetColumns + extraColumns];
+        for (int i = 0; i < targetColumns; i++) {
+            accessors[i] = Accessor.of(target.getColumnType(i + 1), target.getColumnTypeName(i + 1));
+        }
+        for (int i = targetColumns; i < accessors.length; i++) {
+            accessors[i] = Accessor.OBJECT;
+        }
+        return new RowConverter(accessors, targetColumns);
+    }
+
+    /**
+     * @param target       the target columns in insert order, typed by their PostgreSQL udt_name
+     * @param extraColumns columns the source query selects after the target columns
+     */
+    public static RowConverter compile(List<ColumnSchema> target, int extraColumns) {
+        Accessor[] accessors = new Accessor[target.size() + extraColumns];
+        for (int i = 0; i < target.size(); i++) {
+            String typeName = target.get(i).getColumnType();
+            accessors[i] = Accessor.of(getSqlType(typeName), typeName);
+        }
+        for (int i = target.size(); i < accessors.length; i++) {
+            accessors[i] = Accessor.OBJECT;
+        }
+        return new RowConverter(accessors, target.size());
+    }
+
+    /**
+     * the JDBC type pgjdbc reports for a udt_name
+     */
+    private static int getSqlType(String typeName) {
+        switch (typeName == null ? "" : typeName.toLowerCase()) {
+            case "int2":
+                return Types.SMALLINT;
+            case "int4":
+                return Types.INTEGER;
+            case "int8":
+                return Types.BIGINT;
+            case "float4":
+                return Types.REAL;
+            case "float8":
+                return Types.DOUBLE;
+            case "numeric":
+                return Types.NUMERIC;
+            case "bool":
+            case "bit":
+                return Types.BIT;
+            case "bpchar":
+                return Types.CHAR;
+            case "varchar":
+            case "text":
+                return Types.VARCHAR;
+            case "bytea":
+                return Types.BINARY;
+            case "date":
+                return Types.DATE;
+            case "time":
+                return Types.TIME;
+            case "timestamp":
+                return Types.TIMESTAMP;
+            default:
+                return Types.OTHER;
+        }
+    }
+
+    /**
+     * @return the column types of the batches this converter reads into
+     */
+    public RowBatch.Type[] getTypes() {
+        return types;
+    }
+
+    /**
+     * reads the current row of the result set into a new row of the batch
+     */
+    public void read(ResultSet rs, RowBatch batch) throws SQLException {
+        int row = batch.addRow();
+        for (int i = 0; i < accessors.length; i++) {
+            accessors[i].read(rs, i + 1, batch, i, row);
+        }
+    }
+
+    public void bind(PreparedStatement ps, RowBatch batch, int row) throws SQLException {
+        for (int i = 0; i < targetColumns; i++) {
+            if (batch.isNull(i, row)) {
+                accessors[i].bindNull(ps, i + 1);
+            } else {
+                accessors[i].bind(ps, i + 1, batch, i, row);
+            }
+        }
+    }
+
+    enum Accessor {
+        LONG(RowBatch.Type.LONG, Types.BIGINT) {
+            @Override
+            void read(ResultSet rs, int index, RowBatch batch, int column, int row) throws SQLException {
+                long value = rs.getLong(index);
+                if (rs.wasNull()) {
+                    batch.setNull(column, row);
+                } else {
+                    batch.setLong(column, row, value);
+                }
+            }
+
+            @Override
+            void bind(PreparedStatement ps, int index, RowBatch batch, int column, int row) throws SQLException {
+                ps.setLong(index, batch.getLong(column, row));
+            }
+        },
+        INT(RowBatch.Type.INT, Types.INTEGER) {
+            @Override
+            void read(ResultSet rs, int index, RowBatch batch, int column, int row) throws SQLException {
+                int value = rs.getInt(index);
+                if (rs.wasNull()) {
+                    batch.setNull(column, row);
+                } else {
+                    batch.setLong(column, row, value);
+                }
+            }
+
+            @Override
+            void bind(PreparedStatement ps, int index, RowBatch batch, int column, int row) throws SQLException {
+                ps.setInt(index, (int) batch.getLong(column, row));
+            }
+        },
+        FLOAT(RowBatch.Type.FLOAT, Types.REAL) {
+            @Override
+            void read(ResultSet rs, int index, RowBatch batch, int column, int row) throws SQLException {
+                float value = rs.getFloat(index);
+                if (rs.wasNull()) {
+                    batch.setNull(column, row);
+                } else {
+                    batch.setDouble(column, row, value);
+                }
+            }
+
+            @Override
+            void bind(PreparedStatement ps, int index, RowBatch batch, int column, int row) throws SQLException {
+                ps.setFloat(index, (float) batch.getDouble(column, row));
+            }
+        },
+        DOUBLE(RowBatch.Type.DOUBLE, Types.DOUBLE) {
+            @Override
+            void read(ResultSet rs, int index, RowBatch batch, int column, int row) throws SQLException {
+                double value = rs.getDouble(index);
+                if (rs.wasNull()) {
+                    batch.setNull(column, row);
+                } else {
+                    batch.setDouble(column, row, value);
+                }
+            }
+
+            @Override
+            void bind(PreparedStatement ps, int index, RowBatch batch, int column, int row) throws SQLException {
+                ps.setDouble(index, batch.getDouble(column, row));
+            }
+        },
+        DECIMAL(RowBatch.Type.OBJECT, Types.NUMERIC) {
+            @Override
+            void read(ResultSet rs, int index, RowBatch batch, int column, int row) throws SQLException {
+                batch.setObject(column, row, rs.getBigDecimal(index));
+            }
+
+            @Override
+            void bind(PreparedStatement ps, int index, RowBatch batch, int column, int row) throws SQLException {
+                ps.setBigDecimal(index, (BigDecimal) batch.getObject(column, row));
+            }
+        },
+        BOOLEAN(RowBatch.Type.BOOLEAN, Types.BOOLEAN) {
+            @Override
+            void read(ResultSet rs, int index, RowBatch batch, int column, int row) throws SQLException {
+                boolean value = rs.getBoolean(index);
+                if (rs.wasNull()) {
+                    batch.setNull(column, row);
+                } else {
+                    batch.setBoolean(column, row, value);
+                }
+            }
+
+            @Override
+            void bind(PreparedStatement ps, int index, RowBatch batch, int column, int row) throws SQLException {
+                ps.setBoolean(index, batch.getBoolean(column, row));
+            }
+        },
+        /**
+         * PostgreSQL bit(n) only takes a bit string literal, not a boolean
+         */
+        BIT(RowBatch.Type.BOOLEAN, Types.OTHER) {
+            @Override
+            void read(ResultSet rs, int index, RowBatch batch, int column, int row) throws SQLException {
+                BOOLEAN.read(rs, index, batch, column, row);
+            }
+
+            @Override
+            void bind(PreparedStatement ps, int index, RowBatch batch, int column, int row) throws SQLException {
+                ps.setObject(index, batch.getBoolean(column, row) ? "1" : "0", Types.OTHER);
+            }
+        },
+        STRING(RowBatch.Type.STRING, Types.VARCHAR) {
+            @Override
+            void read(ResultSet rs, int index, RowBatch batch, int column, int row) throws SQLException {
+                String value = rs.getString(index);
+                if (value == null) {
+                    batch.setNull(column, row);
+                } else {
+                    batch.setString(column, row, value);
+                }
+            }
+
+            @Override
+            void bind(PreparedStatement ps, int index, RowBatch batch, int column, int row) throws SQLException {
+                ps.setString(index, batch.getString(column, row));
+            }
+        },
+        BYTES(RowBatch.Type.BYTES, Types.BINARY) {
+            @Override
+            void read(ResultSet rs, int index, RowBatch batch, int column, int row) throws SQLException {
+                byte[] value = rs.getBytes(index);
+                if (value == null) {
+                    batch.setNull(column, row);
+                } else {
+                    batch.setBytes(column, row, value);
+                }
+            }
+
+            @Override
+            void bind(PreparedStatement ps, int index, RowBatch batch, int column, int row) throws SQLException {
+                ps.setBytes(index, batch.getBytes(column, row));
+            }
+        },
+        /**
+         * read as the wall clock time, so neither driver shifts it by the JVM time zone
+         */
+        TIMESTAMP(RowBatch.Type.TIMESTAMP, Types.TIMESTAMP) {
+            @Override
+            void read(ResultSet rs, int index, RowBatch batch, int column, int row) throws SQLException {
+                LocalDateTime value = rs.getObject(index, LocalDateTime.class);
+                if (value == null) {
+                    batch.setNull(column, row);
+                } else {
+                    batch.setTimestamp(column, row, value);
+                }
+            }
+
+            @Override
+            void bind(PreparedStatement ps, int index, RowBatch batch, int column, int row) throws SQLException {
+                ps.setObject(index, batch.getTimestamp(column, row), Types.TIMESTAMP);
+            }
+        },
+        DATE(RowBatch.Type.DATE, Types.DATE) {
+            @Override
+            void read(ResultSet rs, int index, RowBatch batch, int column, int row) throws SQLException {
+                LocalDate value = rs.getObject(index, LocalDate.class);
+                if (value == null) {
+                    batch.setNull(column, row);
+                } else {
+                    batch.setDate(column, row, value);
+                }
+            }
+
+            @Override
+            void bind(PreparedStatement ps, int index, RowBatch batch, int column, int row) throws SQLException {
+                ps.setObject(index, batch.getDate(column, row), Types.DATE);
+            }
+        },
+        TIME(RowBatch.Type.TIME, Types.TIME) {
+            @Override
+            void read(ResultSet rs, int index, RowBatch batch, int column, int row) throws SQLException {
+                java.sql.Time value = rs.getTime(index);
+                if (value == null) {
+                    batch.setNull(column, row);
+                } else {
+                    batch.setTime(column, row, value);
+                }
+            }
+
+            @Override
+            void bind(PreparedStatement ps, int index, RowBatch batch, int column, int row) throws SQLException {
+                ps.setTime(index, batch.getTime(column, row));
+            }
+        },
+        OBJECT(RowBatch.Type.OBJECT, Types.NULL) {
+            @Override
+            void read(ResultSet rs, int index, RowBatch batch, int column, int row) throws SQLException {
+                batch.setObject(column, row, rs.getObject(index));
+            }
+
+            @Override
+            void bind(PreparedStatement ps, int index, RowBatch batch, int column, int row) throws SQLException {
+                ps.setObject(index, batch.getObject(column, row));
+            }
+
+            @Override
+            void bindNull(PreparedStatement ps, int index) throws SQLException {
+                ps.setObject(index, null);
+            }
+        };
+
+        private final RowBatch.Type type;
+        private final int sqlType;
+
+        Accessor(RowBatch.Type type, int sqlType) {
+            this.type = type;
+            this.sqlType = sqlType;
+        }
+
+        abstract void read(ResultSet rs, int index, RowBatch batch, int column, int row) throws SQLException;
+
+        /**
+         * binds a value that is not null
+         */
+        abstract void bind(PreparedStatement ps, int index, RowBatch batch, int column, int row) throws SQLException;
+
+        void bindNull(PreparedStatement ps, int index) throws SQLException {
+            ps.setNull(index, sqlType);
+        }
+
+        static Accessor of(int sqlType, String typeName) {
+            switch (sqlType) {
+                case Types.BIGINT:
+                    return LONG;
+                case Types.INTEGER:
+                case Types.SMALLINT:
+                case Types.TINYINT:
+                    return INT;
+                case Types.REAL:
+                case Types.FLOAT:
+                    return FLOAT;
+                case Types.DOUBLE:
+                    return DOUBLE;
+                case Types.NUMERIC:
+                case Types.DECIMAL:
+                    return DECIMAL;
+                case Types.BOOLEAN:
+                    return BOOLEAN;
+                case Types.BIT:
+                    // pgjdbc reports bool as BIT too
+                    return "bool".equalsIgnoreCase(typeName) ? BOOLEAN : BIT;
+                case Types.CHAR:
+                case Types.VARCHAR:
+                case Types.LONGVARCHAR:
+                case Types.NCHAR:
+                case Types.NVARCHAR:
+                case Types.LONGNVARCHAR:
+                case Types.CLOB:
+                    return STRING;
+                case Types.BINARY:
+                case Types.VARBINARY:
+                case Types.LONGVARBINARY:
+                case Types.BLOB:
+                    return BYTES;
+                case Types.TIMESTAMP:
+                    return TIMESTAMP;
+                case Types.DATE:
+                    return DATE;
+                case Types.TIME:
+                    return TIME;
+                default:
+                    return OBJECT;
+            }
+        }
+    }
+}
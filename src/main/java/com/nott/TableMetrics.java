@@ -0,0 +1,70 @@
+package com.nott;
+
+import lombok.Data;
+
+/**
+ * Point in time view of a table's {@link MigrationProgress}, as served by {@code /m2p/metrics}.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Data
+public class TableMetrics {
+
+    private String tableName;
+
+    private MigrationProgress.Phase phase;
+
+    private long totalRecords;
+
+    private long movedRecords;
+
+    private long[] movedPerRange;
+
+    private long rowsPerSecond;
+
+    /**
+     * estimated size of the rows moved, see {@link RowBatch#estimateBytes}
+     */
+    private long bytes;
+
+    private long bytesPerSecond;
+
+    private Latency read;
+
+    private Latency write;
+
+    private int batchSize;
+
+    private int queueDepth;
+
+    private long readStallMillis;
+
+    private long writeStallMillis;
+
+    private long errors;
+
+    private long elapsedMillis;
+
+    /**
+     * -1 until the first batch is written
+     */
+    private long etaSeconds;
+
+    @Data
+    public static class Latency {
+
+        private long batches;
+
+        private double meanMillis;
+
+        private double maxMillis;
+
+        private double p50Millis;
+
+        private double p95Millis;
+
+        private double p99Millis;
+    }
+}
@@ -0,0 +1,41 @@
+package com.nott;
+
+import lombok.Data;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Outcome of migrating one table, see {@link MigrationScheduler}.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Data
+public class TableMigrationResult {
+
+    public enum Status {
+        PENDING, DONE, FAILED, CANCELLED
+    }
+
+    private final String tableName;
+
+    private Status status = Status.PENDING;
+
+    /**
+     * row count of the source table when the migration was scheduled, -1 if unknown
+     */
+    private long totalRecords = -1;
+
+    private long elapsedMillis;
+
+    /**
+     * wall time of every phase the table went through
+     */
+    private final Map<MigrationProgress.Phase, Long> phaseMillis =
+            Collections.synchronizedMap(new EnumMap<>(MigrationProgress.Phase.class));
+
+    private String error;
+}
@@ -0,0 +1,26 @@
+package com.nott;
+
+/**
+ * How {@link DataTableMigration} writes a batch into the target table.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+public enum WriteMode {
+
+    /**
+     * parameterized {@code insert into ... values(?,...)} through JdbcTemplate.batchUpdate
+     */
+    BATCH,
+
+    /**
+     * PostgreSQL {@code COPY ... FROM STDIN} in text format
+     */
+    COPY,
+
+    /**
+     * {@code insert ... on conflict (key) do update}, rows already on the target are
+     * overwritten instead of failing the batch, delta passes always write this way
+     */
+    UPSERT
+}
@@ -0,0 +1,104 @@
+package com.nott.cdc;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A point in the MySQL binlog, as a GTID set when the server runs with GTIDs,
+ * otherwise as a file and offset.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Data
+@Slf4j
+public class BinlogPosition {
+
+    private String file;
+
+    private long position;
+
+    /**
+     * executed GTID set, empty when GTIDs are off
+     */
+    private String gtidSet;
+
+    public boolean isGtid() {
+        return StringUtils.isNotBlank(gtidSet);
+    }
+
+    /**
+     * @return the position the server writes its next event at
+     */
+    public static BinlogPosition current(DataSource source) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(source);
+        List<Map<String, Object>> status;
+        try {
+            status = jdbcTemplate.queryForList("show master status");
+        } catch (BadSqlGrammarException e) {
+            // renamed in 8.4
+            status = jdbcTemplate.queryForList("show binary log status");
+        }
+        if (status.isEmpty()) {
+            throw new IllegalStateException("binary logging is off on the source");
+        }
+        Map<String, Object> row = status.get(0);
+        BinlogPosition position = new BinlogPosition();
+        position.setFile((String) row.get("File"));
+        position.setPosition(((Number) row.get("Position")).longValue());
+        Object gtidSet = row.get("Executed_Gtid_Set");
+        // the server wraps long sets over several lines
+        position.setGtidSet(gtidSet == null ? "" : gtidSet.toString().replaceAll("\\s", ""));
+        return position;
+    }
+
+    /**
+     * @return the saved position, null if there is none
+     */
+    public static BinlogPosition load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        return JSON.parseObject(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), BinlogPosition.class);
+    }
+
+    /**
+     * replaces the file atomically, see {@code CheckpointJournal#sync}
+     */
+    public void save(Path file) throws IOException {
+        byte[] json = JSON.toJSONString(this, SerializerFeature.PrettyFormat).getBytes(StandardCharsets.UTF_8);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(json);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public String toString() {
+        return isGtid() ? gtidSet : file + ":" + position;
+    }
+}
@@ -0,0 +1,219 @@
+package com.nott.cdc;
+
+import com.github.shyiko.mysql.binlog.event.deserialization.json.JsonBinary;
+import com.nott.schema.ColumnSchema;
+import com.nott.schema.TableSchema;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Turns the cells of a binlog row event into the values of the target columns.
+ * <p>
+ * Row events carry no column names, cell {@code i} is the column at ordinal position
+ * {@code i + 1} of the source table. The client is set up to hand text and binary columns
+ * as bytes and dates and times as microseconds, so every value is converted here from the
+ * source column type: text is decoded as UTF-8, ENUM and SET indexes become their labels,
+ * unsigned numbers are widened and binary JSON is rendered as text.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+public class BinlogRowConverter {
+
+    private static final Pattern QUOTED = Pattern.compile("'((?:[^']|'')*)'");
+
+    private static final Pattern BIT_WIDTH = Pattern.compile("\\((\\d+)\\)");
+
+    private final List<ColumnSchema> sourceColumns;
+
+    /**
+     * target column of every source column, -1 for columns the target lacks
+     */
+    private final int[] targetIndexes;
+
+    private final List<String> targetColumns = new ArrayList<>();
+
+    private final int[] keyIndexes;
+
+    private final List<List<String>> labels = new ArrayList<>();
+
+    public BinlogRowConverter(TableSchema sourceTable, TableSchema targetTable) {
+        this.sourceColumns = new ArrayList<>(sourceTable.getColumns());
+        sourceColumns.sort(Comparator.comparingInt(ColumnSchema::getPosition));
+        this.targetIndexes = new int[sourceColumns.size()];
+        for (int i = 0; i < sourceColumns.size(); i++) {
+            ColumnSchema column = sourceColumns.get(i);
+            ColumnSchema targetColumn = targetTable.getColumn(column.getName());
+            targetIndexes[i] = targetColumn == null ? -1 : targetColumns.size();
+            if (targetColumn != null) {
+                targetColumns.add(targetColumn.getName());
+            }
+            labels.add(column.getTypeName().startsWith("ENUM") || column.getTypeName().startsWith("SET")
+                    ? parseLabels(column.getColumnType()) : null);
+        }
+        this.keyIndexes = new int[sourceTable.getPrimaryKey().size()];
+        for (int i = 0; i < keyIndexes.length; i++) {
+            ColumnSchema targetColumn = targetTable.getColumn(sourceTable.getPrimaryKey().get(i));
+            if (targetColumn == null) {
+                throw new IllegalStateException(String.format("key column %s of %s is missing on the target",
+                        sourceTable.getPrimaryKey().get(i), targetTable.getName()));
+            }
+            keyIndexes[i] = targetColumns.indexOf(targetColumn.getName());
+        }
+    }
+
+    public List<String> getTargetColumns() {
+        return targetColumns;
+    }
+
+    public List<String> getKeyColumns() {
+        List<String> keyColumns = new ArrayList<>();
+        for (int keyIndex : keyIndexes) {
+            keyColumns.add(targetColumns.get(keyIndex));
+        }
+        return keyColumns;
+    }
+
+    /**
+     * @param cells    cells of the row event
+     * @param included source columns the event carries a cell for
+     */
+    public Object[] convert(Serializable[] cells, BitSet included) {
+        Object[] row = new Object[targetColumns.size()];
+        int cell = 0;
+        for (int i = 0; i < sourceColumns.size(); i++) {
+            if (!included.get(i)) {
+                continue;
+            }
+            Serializable value = cells[cell++];
+            if (targetIndexes[i] >= 0) {
+                row[targetIndexes[i]] = convert(i, value);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * @return the key of the row, comparable by value
+     */
+    public List<Object> key(Object[] row) {
+        List<Object> key = new ArrayList<>(keyIndexes.length);
+        for (int keyIndex : keyIndexes) {
+            Object value = row[keyIndex];
+            key.add(value instanceof byte[] ? ByteBuffer.wrap((byte[]) value) : value);
+        }
+        return key;
+    }
+
+    private Object convert(int index, Serializable value) {
+        if (value == null) {
+            return null;
+        }
+        ColumnSchema column = sourceColumns.get(index);
+        String type = column.getTypeName();
+        switch (type) {
+            case "TINYINT UNSIGNED":
+                return (Integer) value & 0xFF;
+            case "SMALLINT UNSIGNED":
+                return (Integer) value & 0xFFFF;
+            case "MEDIUMINT UNSIGNED":
+                return ((Integer) value & 0xFFFFFFL);
+            case "INT UNSIGNED":
+                return ((Integer) value & 0xFFFFFFFFL);
+            case "BIGINT UNSIGNED":
+                return new BigDecimal(new BigInteger(Long.toUnsignedString((Long) value)));
+            case "CHAR":
+            case "VARCHAR":
+            case "TINYTEXT":
+            case "TEXT":
+            case "MEDIUMTEXT":
+            case "LONGTEXT":
+                return value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8) : value;
+            case "JSON":
+                try {
+                    return JsonBinary.parseAsString((byte[]) value);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            case "ENUM":
+                int position = (Integer) value;
+                if (position > labels.get(index).size()) {
+                    throw new IllegalStateException(String.format("value %d of %s is not in %s", position,
+                            column.getName(), column.getColumnType()));
+                }
+                return position == 0 ? "" : labels.get(index).get(position - 1);
+            case "SET":
+                return toSet(labels.get(index), (Long) value);
+            case "BIT":
+                return toBitString(column.getColumnType(), (BitSet) value);
+            case "DATE":
+                return LocalDate.ofEpochDay(Math.floorDiv((Long) value, 86_400_000_000L));
+            case "TIME":
+                return LocalTime.ofNanoOfDay((Long) value * 1000);
+            case "DATETIME":
+                return toDateTime((Long) value, ZoneOffset.UTC);
+            case "TIMESTAMP":
+                // an instant, read by the copy in the JVM zone as well
+                return toDateTime((Long) value, ZoneId.systemDefault());
+            default:
+                return value;
+        }
+    }
+
+    private static LocalDateTime toDateTime(long micros, ZoneId zone) {
+        Instant instant = Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                Math.floorMod(micros, 1_000_000L) * 1000);
+        return LocalDateTime.ofInstant(instant, zone);
+    }
+
+    private static String toSet(List<String> labels, long bits) {
+        List<String> members = new ArrayList<>();
+        for (int i = 0; i < labels.size(); i++) {
+            if ((bits & (1L << i)) != 0) {
+                members.add(labels.get(i));
+            }
+        }
+        return String.join(",", members);
+    }
+
+    /**
+     * the bit string literal of a PostgreSQL bit(n) column, highest bit first
+     */
+    private static String toBitString(String columnType, BitSet bits) {
+        Matcher matcher = BIT_WIDTH.matcher(columnType);
+        int width = matcher.find() ? Integer.parseInt(matcher.group(1)) : 1;
+        StringBuilder sb = new StringBuilder(width);
+        for (int i = width - 1; i >= 0; i--) {
+            sb.append(bits.get(i) ? '1' : '0');
+        }
+        return sb.toString();
+    }
+
+    private static List<String> parseLabels(String columnType) {
+        List<String> labels = new ArrayList<>();
+        Matcher matcher = QUOTED.matcher(columnType);
+        while (matcher.find()) {
+            labels.add(matcher.group(1).replace("''", "'"));
+        }
+        return labels;
+    }
+}
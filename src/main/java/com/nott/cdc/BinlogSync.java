@@ -0,0 +1,334 @@
+package com.nott.cdc;
+
+import com.github.shyiko.mysql.binlog.BinaryLogClient;
+import com.github.shyiko.mysql.binlog.event.DeleteRowsEventData;
+import com.github.shyiko.mysql.binlog.event.Event;
+import com.github.shyiko.mysql.binlog.event.EventHeaderV4;
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.event.QueryEventData;
+import com.github.shyiko.mysql.binlog.event.TableMapEventData;
+import com.github.shyiko.mysql.binlog.event.UpdateRowsEventData;
+import com.github.shyiko.mysql.binlog.event.WriteRowsEventData;
+import com.github.shyiko.mysql.binlog.event.deserialization.EventDeserializer;
+import com.nott.JobControl;
+import com.nott.config.MigrationProperties;
+import com.nott.schema.SchemaSnapshot;
+import com.nott.schema.TableSchema;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps PostgreSQL in step with MySQL after the copy by replaying the binlog.
+ * <p>
+ * {@link #markSnapshot()} takes the binlog position before the copy starts, {@link #run}
+ * then reads the row events from there and applies them through a {@link ChangeApplier}
+ * per table. Changes are applied a transaction at a time, grouped into one PostgreSQL
+ * transaction per flush, and the position after the flush is saved, so a restart
+ * resumes from it. The copy may already hold some of the replayed changes, the upserts
+ * and deletes by key make that harmless.
+ * <p>
+ * The sync runs until its job is cancelled. For a cut-over stop the writes on MySQL,
+ * wait for the lag to reach 0 and cancel the job.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Slf4j
+public class BinlogSync {
+
+    private static final long CONNECT_TIMEOUT_MILLIS = 10_000;
+
+    private final DataSource source;
+    private final DataSource target;
+    private final MigrationProperties properties;
+    private final MeterRegistry registry;
+    private final Path positionFile;
+    private final SyncStatus status = new SyncStatus();
+
+    private BinlogPosition startPosition;
+
+    // state of the event thread of the client
+    private final Map<String, ChangeApplier> appliers = new HashMap<>();
+    private final Map<Long, ChangeApplier> tableIds = new HashMap<>();
+    private final Set<ChangeApplier> dirty = new LinkedHashSet<>();
+    private String database;
+    private BinaryLogClient client;
+    private boolean inTransaction;
+    private int pendingRows;
+    private int pendingTransactions;
+    private long lastEventMillis;
+    private String commitFile;
+    private long commitPosition;
+    private long lastFlushMillis = System.currentTimeMillis();
+    private volatile Exception failure;
+
+    /**
+     * @param registry where the lag is published, may be null
+     */
+    public BinlogSync(DataSource source, DataSource target, MigrationProperties properties, MeterRegistry registry) {
+        this.source = source;
+        this.target = target;
+        this.properties = properties;
+        this.registry = registry == null ? new SimpleMeterRegistry() : registry;
+        this.positionFile = Paths.get(properties.getBinlogPositionFile()).toAbsolutePath();
+    }
+
+    public SyncStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Takes the position the sync replays from, call it before the copy reads any row.
+     * A resumed migration keeps the position of its first run.
+     */
+    public BinlogPosition markSnapshot() throws IOException {
+        checkBinlogFormat();
+        startPosition = properties.isResume() ? BinlogPosition.load(positionFile) : null;
+        if (startPosition == null) {
+            startPosition = BinlogPosition.current(source);
+            startPosition.save(positionFile);
+            log.info("binlog position before the copy: {}", startPosition);
+        } else {
+            log.info("resuming binlog sync from {}", startPosition);
+        }
+        status.setStartPosition(startPosition.toString());
+        status.setPosition(startPosition.toString());
+        return startPosition;
+    }
+
+    /**
+     * Replays the binlog into the tables until the job is cancelled.
+     *
+     * @param sourceTables tables the copy moved
+     */
+    public void run(List<TableSchema> sourceTables, SchemaSnapshot targetSchema, JobControl control)
+            throws Exception {
+        if (startPosition == null) {
+            throw new IllegalStateException("markSnapshot must run before the copy");
+        }
+        for (TableSchema sourceTable : sourceTables) {
+            TableSchema targetTable = targetSchema.getTable(sourceTable.getName());
+            if (sourceTable.getPrimaryKey().isEmpty() || targetTable == null) {
+                log.warn("table {} has no primary key or target table, its changes are not synced",
+                        sourceTable.getName());
+                continue;
+            }
+            appliers.put(sourceTable.getName().toLowerCase(), new ChangeApplier(sourceTable, targetTable));
+        }
+        database = new JdbcTemplate(source).queryForObject("select database()", String.class);
+        status.setTables(appliers.size());
+        client = createClient();
+        client.registerEventListener(event -> {
+            if (failure != null) {
+                return;
+            }
+            try {
+                onEvent(event, control);
+            } catch (CancellationException e) {
+                // stopped while paused or throttled, the job thread disconnects
+            } catch (Exception e) {
+                log.error("binlog sync error at {} : {}", status.getPosition(), e.getMessage(), e);
+                failure = e;
+            }
+        });
+        List<Meter> meters = registerMeters();
+        try {
+            client.connect(CONNECT_TIMEOUT_MILLIS);
+            status.setState(SyncStatus.State.STREAMING);
+            log.info("binlog sync of {} tables streaming from {}", appliers.size(), startPosition);
+            while (!control.isCancelled() && failure == null) {
+                TimeUnit.MILLISECONDS.sleep(200);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            status.setState(SyncStatus.State.STOPPED);
+            log.info("binlog sync stopped at {}", status.getPosition());
+        } catch (Exception e) {
+            status.setState(SyncStatus.State.FAILED);
+            throw e;
+        } finally {
+            client.disconnect();
+            meters.forEach(registry::remove);
+        }
+    }
+
+    private void onEvent(Event event, JobControl control) throws Exception {
+        EventHeaderV4 header = event.getHeader();
+        EventType type = header.getEventType();
+        if (type == EventType.TABLE_MAP) {
+            TableMapEventData data = event.getData();
+            ChangeApplier applier = database.equalsIgnoreCase(data.getDatabase())
+                    ? appliers.get(data.getTable().toLowerCase()) : null;
+            if (applier != null) {
+                tableIds.put(data.getTableId(), applier);
+            } else {
+                tableIds.remove(data.getTableId());
+            }
+        } else if (EventType.isWrite(type)) {
+            WriteRowsEventData data = event.getData();
+            ChangeApplier applier = tableIds.get(data.getTableId());
+            if (applier != null) {
+                for (Serializable[] row : data.getRows()) {
+                    applier.upsert(applier.getConverter().convert(row, data.getIncludedColumns()));
+                }
+                changed(applier, data.getRows().size(), header);
+            }
+        } else if (EventType.isUpdate(type)) {
+            UpdateRowsEventData data = event.getData();
+            ChangeApplier applier = tableIds.get(data.getTableId());
+            if (applier != null) {
+                BinlogRowConverter converter = applier.getConverter();
+                for (Map.Entry<Serializable[], Serializable[]> row : data.getRows()) {
+                    Object[] before = converter.convert(row.getKey(), data.getIncludedColumnsBeforeUpdate());
+                    Object[] after = converter.convert(row.getValue(), data.getIncludedColumns());
+                    if (!converter.key(before).equals(converter.key(after))) {
+                        applier.delete(before);
+                    }
+                    applier.upsert(after);
+                }
+                changed(applier, data.getRows().size(), header);
+            }
+        } else if (EventType.isDelete(type)) {
+            DeleteRowsEventData data = event.getData();
+            ChangeApplier applier = tableIds.get(data.getTableId());
+            if (applier != null) {
+                for (Serializable[] row : data.getRows()) {
+                    applier.delete(applier.getConverter().convert(row, data.getIncludedColumns()));
+                }
+                changed(applier, data.getRows().size(), header);
+            }
+        } else if (type == EventType.XID || type == EventType.QUERY && isCommit(event)) {
+            committed(header, control);
+        } else if (type == EventType.HEARTBEAT && !inTransaction) {
+            // the server has nothing newer to send
+            if (dirty.isEmpty()) {
+                status.setLagMillis(0);
+            } else {
+                flush(control);
+            }
+        }
+    }
+
+    private void changed(ChangeApplier applier, int rows, EventHeaderV4 header) {
+        dirty.add(applier);
+        inTransaction = true;
+        pendingRows += rows;
+        lastEventMillis = header.getTimestamp();
+    }
+
+    private void committed(EventHeaderV4 header, JobControl control) throws Exception {
+        inTransaction = false;
+        pendingTransactions++;
+        commitFile = client.getBinlogFilename();
+        commitPosition = header.getNextPosition();
+        status.setPosition(commitFile + ":" + commitPosition);
+        if (pendingRows >= properties.getBinlogBatchSize()
+                || System.currentTimeMillis() - lastFlushMillis >= properties.getBinlogFlushMillis()) {
+            flush(control);
+        }
+    }
+
+    private void flush(JobControl control) throws Exception {
+        if (!dirty.isEmpty()) {
+            control.checkpoint(pendingRows);
+            int[] applied = ChangeApplier.applyAll(target, new ArrayList<>(dirty));
+            dirty.clear();
+            status.setUpserts(status.getUpserts() + applied[0]);
+            status.setDeletes(status.getDeletes() + applied[1]);
+            status.setLagMillis(Math.max(0, System.currentTimeMillis() - lastEventMillis));
+        }
+        status.setTransactions(status.getTransactions() + pendingTransactions);
+        pendingRows = 0;
+        pendingTransactions = 0;
+        savePosition();
+        lastFlushMillis = System.currentTimeMillis();
+        status.setLastFlushAt(new Date(lastFlushMillis));
+    }
+
+    private void savePosition() throws IOException {
+        BinlogPosition position = new BinlogPosition();
+        position.setFile(commitFile);
+        position.setPosition(commitPosition);
+        position.setGtidSet(startPosition.isGtid() ? client.getGtidSet() : "");
+        position.save(positionFile);
+    }
+
+    private static boolean isCommit(Event event) {
+        QueryEventData data = event.getData();
+        return "COMMIT".equalsIgnoreCase(data.getSql());
+    }
+
+    private BinaryLogClient createClient() {
+        if (!(source instanceof HikariDataSource)) {
+            throw new IllegalStateException("binlog sync needs the source pool to read the server address");
+        }
+        HikariDataSource dataSource = (HikariDataSource) source;
+        // jdbc:mysql://host:port/db?options
+        URI uri = URI.create(dataSource.getJdbcUrl().substring("jdbc:".length()));
+        BinaryLogClient binaryLogClient = new BinaryLogClient(uri.getHost(), uri.getPort() < 0 ? 3306 : uri.getPort(),
+                dataSource.getUsername(), dataSource.getPassword());
+        binaryLogClient.setServerId(properties.getBinlogServerId());
+        binaryLogClient.setHeartbeatInterval(properties.getBinlogFlushMillis());
+        EventDeserializer deserializer = new EventDeserializer();
+        deserializer.setCompatibilityMode(EventDeserializer.CompatibilityMode.DATE_AND_TIME_AS_LONG_MICRO,
+                EventDeserializer.CompatibilityMode.CHAR_AND_BINARY_AS_BYTE_ARRAY);
+        binaryLogClient.setEventDeserializer(deserializer);
+        if (startPosition.isGtid()) {
+            binaryLogClient.setGtidSet(startPosition.getGtidSet());
+        } else {
+            binaryLogClient.setBinlogFilename(startPosition.getFile());
+            binaryLogClient.setBinlogPosition(startPosition.getPosition());
+        }
+        return binaryLogClient;
+    }
+
+    /**
+     * row events only carry every column with row based logging of full images
+     */
+    private void checkBinlogFormat() {
+        Map<String, Object> settings = new JdbcTemplate(source)
+                .queryForMap("select @@binlog_format as format, @@binlog_row_image as image");
+        if (!"ROW".equalsIgnoreCase(String.valueOf(settings.get("format")))
+                || !"FULL".equalsIgnoreCase(String.valueOf(settings.get("image")))) {
+            throw new IllegalStateException("binlog sync needs binlog_format=ROW and binlog_row_image=FULL, found "
+                    + settings.values());
+        }
+    }
+
+    private List<Meter> registerMeters() {
+        return Arrays.asList(
+                Gauge.builder("m2p.binlog.lag", status, SyncStatus::getLagMillis)
+                        .baseUnit("milliseconds")
+                        .description("time between a change committed on MySQL and applied on PostgreSQL")
+                        .register(registry),
+                FunctionCounter.builder("m2p.binlog.upserts", status, SyncStatus::getUpserts)
+                        .register(registry),
+                FunctionCounter.builder("m2p.binlog.deletes", status, SyncStatus::getDeletes)
+                        .register(registry));
+    }
+}
@@ -0,0 +1,164 @@
+package com.nott.cdc;
+
+import com.nott.schema.TableSchema;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Collects the row changes of one table and applies them to PostgreSQL by primary key.
+ * <p>
+ * Only the last change of every key is kept, so a row updated many times between two
+ * flushes is written once. The kept changes are deletes or upserts
+ * ({@code insert ... on conflict do update}), both of which give the same result when
+ * applied again, so replaying changes the target already has is harmless. That is what
+ * lets the sync start from a position taken before the copy read the rows.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+public class ChangeApplier {
+
+    private final String tableName;
+    private final BinlogRowConverter converter;
+    private final String upsertSql;
+    private final String deleteSql;
+
+    /**
+     * last change of every key, null for a delete
+     */
+    private final Map<List<Object>, Object[]> pending = new LinkedHashMap<>();
+
+    public ChangeApplier(TableSchema sourceTable, TableSchema targetTable) {
+        this.tableName = targetTable.getName();
+        this.converter = new BinlogRowConverter(sourceTable, targetTable);
+        List<String> columns = converter.getTargetColumns();
+        List<String> keyColumns = converter.getKeyColumns();
+        List<String> updates = columns.stream()
+                .filter(column -> !keyColumns.contains(column))
+                .map(column -> column + " = excluded." + column)
+                .collect(Collectors.toList());
+        this.upsertSql = String.format("insert into %s (%s) values (%s) on conflict (%s) do %s", tableName,
+                String.join(",", columns), String.join(",", Collections.nCopies(columns.size(), "?")),
+                String.join(",", keyColumns), updates.isEmpty() ? "nothing" : "update set " + String.join(",", updates));
+        this.deleteSql = String.format("delete from %s where %s", tableName,
+                keyColumns.stream().map(column -> column + " = ?").collect(Collectors.joining(" and ")));
+    }
+
+    public BinlogRowConverter getConverter() {
+        return converter;
+    }
+
+    public void upsert(Object[] row) {
+        pending.put(converter.key(row), row);
+    }
+
+    public void delete(Object[] row) {
+        pending.put(converter.key(row), null);
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * writes the pending changes, which stay pending until {@link #clear()}
+     *
+     * @return rows upserted and deleted
+     */
+    public int[] apply(Connection con) throws SQLException {
+        List<Object[]> upserts = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        for (Map.Entry<List<Object>, Object[]> change : pending.entrySet()) {
+            if (change.getValue() == null) {
+                deletes.add(change.getKey().stream()
+                        .map(value -> value instanceof ByteBuffer ? ((ByteBuffer) value).array() : value)
+                        .toArray());
+            } else {
+                upserts.add(change.getValue());
+            }
+        }
+        // every key is in one list only, so the order between them doesn't matter
+        executeBatch(con, deleteSql, deletes);
+        executeBatch(con, upsertSql, upserts);
+        return new int[]{upserts.size(), deletes.size()};
+    }
+
+    public void clear() {
+        pending.clear();
+    }
+
+    private static void executeBatch(Connection con, String sql, List<Object[]> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    bind(ps, i + 1, row[i]);
+                }
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * text goes untyped so PostgreSQL casts it to json, bit or whatever the column is
+     */
+    private static void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.NULL);
+        } else if (value instanceof String) {
+            ps.setObject(index, value, Types.OTHER);
+        } else {
+            ps.setObject(index, value);
+        }
+    }
+
+    /**
+     * applies the changes of all tables in one transaction
+     *
+     * @return rows upserted and deleted
+     */
+    public static int[] applyAll(DataSource target, List<ChangeApplier> appliers) {
+        return new JdbcTemplate(target).execute((ConnectionCallback<int[]>) con -> {
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try {
+                int[] applied = new int[2];
+                for (ChangeApplier applier : appliers) {
+                    int[] tableApplied = applier.apply(con);
+                    applied[0] += tableApplied[0];
+                    applied[1] += tableApplied[1];
+                }
+                con.commit();
+                appliers.forEach(ChangeApplier::clear);
+                return applied;
+            } catch (SQLException | RuntimeException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return tableName;
+    }
+}
@@ -0,0 +1,180 @@
+package com.nott.cdc;
+
+import com.nott.CheckpointJournal;
+import com.nott.DataTableMigration;
+import com.nott.JobControl;
+import com.nott.MigrationMetrics;
+import com.nott.TableMigrationResult;
+import com.nott.config.MigrationProperties;
+import com.nott.schema.SchemaSnapshot;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps PostgreSQL in step with MySQL after the copy by re-reading the rows whose
+ * delta column moved past a watermark, for sources where the binlog can't be read.
+ * <p>
+ * {@link #markSnapshot} takes the newest change of every table before the copy starts,
+ * {@link #run} then copies the rows changed after it in passes, upserting them by primary
+ * key, and moves the watermark of every table to the newest change it copied. The
+ * watermarks are kept in the checkpoint journal, so a restarted sync goes on from them.
+ * Deleted rows leave no change time behind, a delta pass never sees them.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Slf4j
+public class DeltaSync {
+
+    private final DataSource source;
+    private final DataSource target;
+    private final MigrationProperties properties;
+    private final MigrationMetrics metrics;
+
+    /**
+     * newest change of every table before the copy, for the tables the journal has no watermark of
+     */
+    private final Map<String, Object> snapshot = new HashMap<>();
+
+    /**
+     * @param metrics where the progress of the passes is published, may be null
+     */
+    public DeltaSync(DataSource source, DataSource target, MigrationProperties properties, MigrationMetrics metrics) {
+        this.source = source;
+        this.target = target;
+        this.properties = properties;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Takes the newest change of every table with a delta column, call it before the copy
+     * reads any row. A resumed migration keeps the watermarks of its first run.
+     */
+    public void markSnapshot(SchemaSnapshot sourceSchema, SchemaSnapshot targetSchema) throws IOException {
+        CheckpointJournal journal = openJournal(properties.isResume());
+        for (Map.Entry<String, DataTableMigration> entry : createMigrations(sourceSchema, targetSchema).entrySet()) {
+            String tableName = entry.getKey();
+            DataTableMigration migration = entry.getValue();
+            Object watermark = journal == null ? null : journal.getWatermark(tableName);
+            if (watermark == null) {
+                watermark = migration.getNewestChange();
+                if (journal != null) {
+                    journal.setWatermark(tableName, watermark);
+                }
+            }
+            snapshot.put(tableName, watermark);
+            log.info("table {} watermark before the copy: {}", tableName, watermark);
+        }
+        if (journal != null) {
+            journal.sync();
+        }
+    }
+
+    /**
+     * Runs delta passes over the tables until {@code deltaPasses} are done or the job is cancelled.
+     *
+     * @param tableNames tables the copy moved
+     * @param onPass     receives the results of every pass
+     */
+    public void run(List<String> tableNames, JobControl control, Consumer<List<TableMigrationResult>> onPass)
+            throws Exception {
+        SchemaSnapshot sourceSchema = SchemaSnapshot.load(source);
+        SchemaSnapshot targetSchema = SchemaSnapshot.load(target);
+        Map<String, DataTableMigration> migrations = createMigrations(sourceSchema, targetSchema);
+        migrations.keySet().retainAll(tableNames);
+        migrations.values().forEach(migration -> migration.setJobControl(control));
+        if (migrations.isEmpty()) {
+            log.warn("no table has a delta column, nothing to sync");
+            return;
+        }
+        CheckpointJournal journal = openJournal(true);
+        Map<String, Object> watermarks = new LinkedHashMap<>();
+        for (String tableName : migrations.keySet()) {
+            Object watermark = journal == null ? null : journal.getWatermark(tableName);
+            watermarks.put(tableName, watermark == null ? snapshot.get(tableName) : watermark);
+        }
+        log.info("delta sync of {} tables from {}", migrations.size(), watermarks);
+        for (int pass = 1; properties.getDeltaPasses() <= 0 || pass <= properties.getDeltaPasses(); pass++) {
+            if (pass > 1) {
+                sleep(control, TimeUnit.SECONDS.toMillis(properties.getDeltaIntervalSeconds()));
+            }
+            control.checkCancelled();
+            List<TableMigrationResult> results = new ArrayList<>();
+            for (Map.Entry<String, DataTableMigration> entry : migrations.entrySet()) {
+                results.add(runPass(entry.getValue(), entry.getKey(), watermarks, journal));
+            }
+            onPass.accept(results);
+        }
+    }
+
+    private TableMigrationResult runPass(DataTableMigration migration, String tableName,
+                                        Map<String, Object> watermarks, CheckpointJournal journal) throws IOException {
+        TableMigrationResult result = new TableMigrationResult(tableName);
+        long start = System.currentTimeMillis();
+        try {
+            Object watermark = migration.migrateChanges(tableName, watermarks.get(tableName));
+            watermarks.put(tableName, watermark);
+            if (journal != null) {
+                journal.setWatermark(tableName, watermark);
+                journal.sync();
+            }
+            result.setStatus(TableMigrationResult.Status.DONE);
+        } catch (CancellationException e) {
+            result.setStatus(TableMigrationResult.Status.CANCELLED);
+            throw e;
+        } catch (Exception e) {
+            // the watermark stays, the next pass reads the same rows again
+            log.error("delta pass of table {} error : {}", tableName, e.getMessage(), e);
+            result.setStatus(TableMigrationResult.Status.FAILED);
+            result.setError(e.getMessage());
+        } finally {
+            result.setElapsedMillis(System.currentTimeMillis() - start);
+        }
+        return result;
+    }
+
+    private Map<String, DataTableMigration> createMigrations(SchemaSnapshot sourceSchema,
+                                                             SchemaSnapshot targetSchema) {
+        Map<String, DataTableMigration> migrations = new LinkedHashMap<>();
+        for (String tableName : sourceSchema.getTableNames()) {
+            if (StringUtils.isEmpty(properties.getDeltaColumnOf(tableName)) || !targetSchema.containsTable(tableName)) {
+                continue;
+            }
+            DataTableMigration migration = new DataTableMigration(source, target, sourceSchema.getTable(tableName),
+                    targetSchema.getTable(tableName), new HashMap<>(), properties);
+            if (migration.hasDeltaColumn()) {
+                migration.setMetrics(metrics);
+                migrations.put(tableName, migration);
+            }
+        }
+        return migrations;
+    }
+
+    /**
+     * @return null when no checkpoint file is configured, the watermarks then live as long as the job
+     */
+    private CheckpointJournal openJournal(boolean resume) throws IOException {
+        return StringUtils.isEmpty(properties.getCheckpointFile()) ? null
+                : CheckpointJournal.open(properties.getCheckpointFile(), resume,
+                properties.getCheckpointSyncInterval());
+    }
+
+    private static void sleep(JobControl control, long millis) throws InterruptedException {
+        long until = System.currentTimeMillis() + millis;
+        while (!control.isCancelled() && System.currentTimeMillis() < until) {
+            TimeUnit.MILLISECONDS.sleep(Math.min(200, until - System.currentTimeMillis()));
+        }
+    }
+}
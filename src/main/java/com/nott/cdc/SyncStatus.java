@@ -0,0 +1,48 @@
+package com.nott.cdc;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * Live state of a {@link BinlogSync}, shown with its job.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Data
+public class SyncStatus {
+
+    public enum State {
+        SNAPSHOT, STREAMING, STOPPED, FAILED
+    }
+
+    private volatile State state = State.SNAPSHOT;
+
+    /**
+     * position taken before the copy, the sync replays from there
+     */
+    private volatile String startPosition;
+
+    /**
+     * position after the last applied transaction
+     */
+    private volatile String position;
+
+    private volatile int tables;
+
+    /**
+     * time between a change being committed on MySQL and applied on PostgreSQL,
+     * 0 when the sync has caught up, -1 until it streams
+     */
+    private volatile long lagMillis = -1;
+
+    private volatile long transactions;
+
+    private volatile long upserts;
+
+    private volatile long deletes;
+
+    private volatile Date lastFlushAt;
+}
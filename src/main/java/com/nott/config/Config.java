@@ -1,13 +1,16 @@
 package com.nott.config;
 
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.jmx.JmxConfig;
+import io.micrometer.jmx.JmxMeterRegistry;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 
-import javax.sql.DataSource;
-
 /**
  * @author Nott
  * @Date 2023/6/2
@@ -16,16 +19,52 @@ import javax.sql.DataSource;
 @Configuration
 public class Config {
 
+    /**
+     * PostgreSQL pool, sized for every table, range and writer of the migration to hold a
+     * connection. Anything set under spring.target-db overrides these defaults.
+     */
     @Bean
     @ConfigurationProperties(prefix = "spring.target-db")
-    public DataSource targetDatasource() {
-        return DataSourceBuilder.create().build();
+    public HikariDataSource targetDatasource(MigrationProperties properties) {
+        HikariDataSource dataSource = DataSourceBuilder.create().type(HikariDataSource.class).build();
+        dataSource.setPoolName("m2p-target");
+        dataSource.setMaximumPoolSize(
+                properties.getWorkers() * properties.getRangeWorkers() * properties.getWriterThreads() + 1);
+        // one multi row insert per batch instead of a statement per row
+        dataSource.addDataSourceProperty("reWriteBatchedInserts", "true");
+        // the insert is the same statement for the whole table, prepare it on the server right away
+        dataSource.addDataSourceProperty("prepareThreshold", "1");
+        return dataSource;
     }
 
+    /**
+     * MySQL pool, sized for every table and range of the migration to hold a connection, and
+     * every writer too while it reads a large value in chunks next to the reader's cursor.
+     * Anything set under spring.source-db overrides these defaults.
+     */
     @Bean
     @ConfigurationProperties(prefix = "spring.source-db")
     @Primary
-    public DataSource sourceDataSource() {
-        return DataSourceBuilder.create().build();
+    public HikariDataSource sourceDataSource(MigrationProperties properties) {
+        HikariDataSource dataSource = DataSourceBuilder.create().type(HikariDataSource.class).build();
+        dataSource.setPoolName("m2p-source");
+        int readers = properties.getWorkers() * properties.getRangeWorkers();
+        int lobReaders = properties.isLobDeferred() ? readers * properties.getWriterThreads() : 0;
+        dataSource.setMaximumPoolSize(readers + lobReaders + 1);
+        dataSource.addDataSourceProperty("rewriteBatchedStatements", "true");
+        // the page queries of a table only differ in their parameters
+        dataSource.addDataSourceProperty("useServerPrepStmts", "true");
+        dataSource.addDataSourceProperty("cachePrepStmts", "true");
+        dataSource.addDataSourceProperty("prepStmtCacheSize", "250");
+        dataSource.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        return dataSource;
+    }
+
+    /**
+     * migration meters, under the "metrics" domain of JMX
+     */
+    @Bean
+    public MeterRegistry meterRegistry() {
+        return new JmxMeterRegistry(JmxConfig.DEFAULT, Clock.SYSTEM);
     }
 }
@@ -0,0 +1,291 @@
+package com.nott.config;
+
+import com.nott.ReadMode;
+import com.nott.WriteMode;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tuning switches of the data migration, bound from {@code m2p.migration.*}.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "m2p.migration")
+public class MigrationProperties {
+
+    /**
+     * how the source table is paged
+     */
+    private ReadMode readMode = ReadMode.KEYSET;
+
+    /**
+     * fetch size of the streaming cursor, Integer.MIN_VALUE streams row by row,
+     * a positive value needs useCursorFetch=true on the source url
+     */
+    private int streamFetchSize = Integer.MIN_VALUE;
+
+    /**
+     * seconds MySQL waits on a slow consumer before dropping a streaming cursor
+     */
+    private int streamNetWriteTimeout = 3600;
+
+    /**
+     * how batches are written into the target table
+     */
+    private WriteMode writeMode = WriteMode.BATCH;
+
+    /**
+     * drop the NUL characters PostgreSQL text can't hold instead of failing the row,
+     * every such row is logged and counted
+     */
+    private boolean copyStripNul = false;
+
+    /**
+     * tables migrated at the same time
+     */
+    private int workers = 4;
+
+    /**
+     * connections the migration may hold on the source, 0 for the pool size minus one
+     */
+    private int sourceMaxConnections = 0;
+
+    /**
+     * connections the migration may hold on the target, 0 for the pool size minus one
+     */
+    private int targetMaxConnections = 0;
+
+    /**
+     * key ranges a large table is split into, 1 to read every table as a whole
+     */
+    private int tableChunks = 8;
+
+    /**
+     * tables with fewer rows are not split
+     */
+    private int chunkMinRecords = 1000000;
+
+    /**
+     * workers reading the ranges of one table at the same time
+     */
+    private int rangeWorkers = 4;
+
+    /**
+     * rows read and written at a time, the starting point when the size is adaptive
+     */
+    private int batchSize = 100;
+
+    /**
+     * grow or shrink the batches of every table by how fast they are written
+     */
+    private boolean adaptiveBatchSize = true;
+
+    private int batchMinSize = 50;
+
+    private int batchMaxSize = 20000;
+
+    /**
+     * estimated bytes of a batch, keeps the batches of wide tables small
+     */
+    private long batchMaxBytes = 16 * 1024 * 1024;
+
+    /**
+     * write time of one batch the adaptive size shrinks below, 0 for no limit
+     */
+    private long batchTargetMillis = 2000;
+
+    /**
+     * batches the reader may get ahead of the writers
+     */
+    private int queueDepth = 4;
+
+    /**
+     * writers draining the batches of one table, extra writers need a free target connection
+     */
+    private int writerThreads = 1;
+
+    /**
+     * keep the text and binary values of a batch in direct buffers, off the heap
+     */
+    private boolean batchOffHeap = false;
+
+    /**
+     * source types whose large values are read apart from their rows, in chunks
+     */
+    private String lobTypes = "MEDIUMBLOB,LONGBLOB,MEDIUMTEXT,LONGTEXT";
+
+    /**
+     * bytes up to which a value of a lob type is read with its row, 0 to read every value with its row
+     */
+    private long lobInlineBytes = 256 * 1024;
+
+    /**
+     * bytes of binary or characters of text read per round trip of a larger value
+     */
+    private int lobChunkSize = 1024 * 1024;
+
+    /**
+     * file recording how far every table got, empty to migrate without a checkpoint
+     */
+    private String checkpointFile = "m2p-checkpoint.json";
+
+    /**
+     * milliseconds between two fsyncs of the checkpoint file
+     */
+    private long checkpointSyncInterval = 1000;
+
+    /**
+     * continue from the checkpoint file instead of starting over
+     */
+    private boolean resume = false;
+
+    /**
+     * create tables without primary key and indexes and build them once the rows are in
+     */
+    private boolean bulkLoad = false;
+
+    /**
+     * indexes built at the same time after a bulk load
+     */
+    private int indexThreads = 4;
+
+    /**
+     * create tables UNLOGGED and write them in transactions with synchronous_commit off, then SET LOGGED and
+     * ANALYZE each table once its rows are in
+     */
+    private boolean fastLoad = false;
+
+    /**
+     * maintenance_work_mem of the statements run after a fast load, the index builds use it
+     */
+    private String fastLoadMaintenanceWorkMem = "1GB";
+
+    /**
+     * server id the binlog sync registers with on MySQL, unique among its replicas
+     */
+    private long binlogServerId = 65401;
+
+    /**
+     * where the binlog sync keeps its position, the snapshot position until the first flush
+     */
+    private String binlogPositionFile = "m2p-binlog.json";
+
+    /**
+     * changed rows of a table applied in one statement batch
+     */
+    private int binlogBatchSize = 1000;
+
+    /**
+     * longest time a committed change waits before it is applied
+     */
+    private long binlogFlushMillis = 500;
+
+    /**
+     * source column holding when a row last changed, delta passes copy the rows it moved
+     * past the watermark of the table, empty for none
+     */
+    private String deltaColumn = "";
+
+    /**
+     * delta column of single tables, overriding {@link #deltaColumn}
+     */
+    private Map<String, String> deltaColumns = new HashMap<>();
+
+    /**
+     * seconds a delta pass reads back before a date or time watermark, so rows of
+     * transactions that committed after a later one aren't missed
+     */
+    private int deltaOverlapSeconds = 5;
+
+    /**
+     * seconds between the end of a delta pass and the start of the next
+     */
+    private long deltaIntervalSeconds = 60;
+
+    /**
+     * delta passes to run, 0 to run them until the job is cancelled
+     */
+    private int deltaPasses = 0;
+
+    /**
+     * key ranges a verified table is cut into, and every differing range again
+     */
+    private int verifyChunks = 16;
+
+    /**
+     * checksum queries running at the same time, over both sides
+     */
+    private int verifyThreads = 4;
+
+    /**
+     * differing ranges of at most this many rows are compared row by row
+     */
+    private int verifyLeafRows = 1000;
+
+    /**
+     * keys of differing rows reported per table and kind
+     */
+    private int verifyMaxDiffs = 100;
+
+    /**
+     * directory an export writes its segments and manifest to, and an import reads them from
+     */
+    private String dumpDir = "m2p-dump";
+
+    /**
+     * bytes of COPY text after which an export starts the next segment of a table
+     */
+    private long dumpSegmentBytes = 256L * 1024 * 1024;
+
+    /**
+     * gzip level of the segments, 1 is the fastest
+     */
+    private int dumpCompressionLevel = 1;
+
+    /**
+     * segments an import copies into the target at the same time
+     */
+    private int dumpImportThreads = 4;
+
+    /**
+     * empty every table before its segments are copied in, so an import can run again
+     */
+    private boolean dumpImportTruncate = true;
+
+    /**
+     * CREATE and ALTER TABLE statements create and fill run at the same time
+     */
+    private int ddlThreads = 4;
+
+    /**
+     * create and fill jobs running at the same time
+     */
+    private int jobThreads = 2;
+
+    /**
+     * run the jobs on virtual threads when the JVM has them
+     */
+    private boolean jobVirtualThreads = true;
+
+    /**
+     * @return the delta column of the table, empty for none
+     */
+    public String getDeltaColumnOf(String tableName) {
+        return deltaColumns.getOrDefault(tableName, deltaColumn);
+    }
+
+    /**
+     * @return true when large values may be read apart from their rows, on connections of their own
+     */
+    public boolean isLobDeferred() {
+        return lobInlineBytes > 0 && lobTypes != null && !lobTypes.trim().isEmpty();
+    }
+}
@@ -3,23 +3,36 @@ package com.nott.controller;
 
 import com.alibaba.fastjson.JSONObject;
 import com.mysql.cj.jdbc.ConnectionImpl;
-import com.nott.DataTableMigration;
-import com.nott.utils.MigrationUtils;
-import com.nott.config.Config;
+import com.nott.MigrationJob;
+import com.nott.MigrationJobService;
+import com.nott.MigrationMetrics;
+import com.nott.MigrationScheduler;
+import com.nott.TableMetrics;
+import com.nott.TableMigrationResult;
+import com.nott.cdc.BinlogSync;
+import com.nott.cdc.DeltaSync;
+import com.nott.dump.DumpImporter;
+import com.nott.dump.DumpWriter;
+import com.nott.verify.TableVerification;
+import com.nott.verify.TableVerifier;
+import com.nott.config.MigrationProperties;
+import com.nott.schema.SchemaSnapshot;
+import com.nott.schema.DdlPlanner;
+import com.nott.schema.TableDdl;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
 import javax.annotation.Resource;
 import javax.sql.DataSource;
-import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * @author Nott
@@ -31,119 +44,241 @@ import java.util.List;
 @Slf4j
 public class Controller {
 
+    @Resource(name = "sourceDataSource")
+    private DataSource source;
+
+    @Resource(name = "targetDatasource")
+    private DataSource targetDatasource;
+
+    @Resource
+    private MigrationProperties migrationProperties;
+
+    @Resource
+    private MigrationMetrics migrationMetrics;
+
     @Resource
-    private Config config;
+    private MigrationJobService migrationJobService;
 
+    /**
+     * creates the missing tables and, with {"data": true}, copies their rows in a background job,
+     * with {"sync": true} as well the job then replays the binlog until it is cancelled,
+     * with {"delta": true} it runs delta passes instead
+     */
     @RequestMapping("/create")
-    @Transactional(rollbackFor = Exception.class)
-    public void create(@RequestBody JSONObject jsonObject) {
+    public MigrationJob create(@RequestBody JSONObject jsonObject) {
         boolean isNeedData = jsonObject.getBoolean("data");
-        Connection sourceConnection = null;
-        Connection targetConn = null;
+        boolean isNeedSync = isNeedData && Boolean.TRUE.equals(jsonObject.getBoolean("sync"));
+        boolean isNeedDelta = isNeedData && !isNeedSync && Boolean.TRUE.equals(jsonObject.getBoolean("delta"));
+        return migrationJobService.submit(MigrationJob.Type.CREATE,
+                job -> create(job, isNeedData, isNeedSync, isNeedDelta));
+    }
+
+    private void create(MigrationJob job, boolean isNeedData, boolean isNeedSync, boolean isNeedDelta)
+            throws Exception {
         try {
-            DataSource source = config.sourceDataSource();
-            DataSource targetDatasource = config.targetDatasource();
-            sourceConnection = source.getConnection();
-            targetConn = targetDatasource.getConnection();
-            List<String> sourceTableNames = getTableNamesByConn(sourceConnection);
-            List<String> targetTableNames = getTableNamesByConn(targetConn);
-
-            if (sourceTableNames.isEmpty()) {
+            SchemaSnapshot sourceSchema = SchemaSnapshot.load(source);
+            SchemaSnapshot targetSchema = SchemaSnapshot.load(targetDatasource);
+            if (sourceSchema.getTableNames().isEmpty()) {
                 return;
             }
 
             // create table
-            for (String tableName : sourceTableNames) {
-                if (!targetTableNames.contains(tableName)) {
-                    MigrationUtils.createTableBySourceTabName(sourceConnection, targetConn, tableName);
-                }
-            }
+            DdlPlanner planner = new DdlPlanner(targetDatasource, migrationProperties);
+            planner.setJobControl(job.getControl());
+            List<TableDdl> ddl = planner.plan(sourceSchema, targetSchema, true, false,
+                    !(isNeedData && migrationProperties.isBulkLoad()), isNeedData && migrationProperties.isFastLoad());
+            job.setDdl(ddl);
+            planner.apply(ddl);
+            job.getControl().checkCancelled();
+            // a table that couldn't be created has nothing to copy into
+            Set<String> failed = ddl.stream()
+                    .filter(table -> table.getStatus() == TableDdl.Status.FAILED)
+                    .map(TableDdl::getTableName)
+                    .collect(Collectors.toSet());
+            List<String> sourceTableNames = sourceSchema.getTableNames().stream()
+                    .filter(tableName -> !failed.contains(tableName))
+                    .collect(Collectors.toList());
            if(isNeedData){
                // mysql data 2 pgsql
-               for (String tableName : sourceTableNames) {
-                   new DataTableMigration(source, tableName, targetDatasource).migrate(tableName, tableName);
+               MigrationScheduler scheduler = new MigrationScheduler(source, targetDatasource, migrationProperties,
+                       migrationMetrics);
+               scheduler.setJobControl(job.getControl());
+               BinlogSync sync = null;
+               if (isNeedSync) {
+                   // before the copy reads anything, so no change falls between the two
+                   sync = new BinlogSync(source, targetDatasource, migrationProperties, migrationMetrics.getRegistry());
+                   sync.markSnapshot();
+                   job.setSync(sync.getStatus());
+               }
+               DeltaSync delta = null;
+               if (isNeedDelta) {
+                   delta = new DeltaSync(source, targetDatasource, migrationProperties, migrationMetrics);
+                   delta.markSnapshot(sourceSchema, SchemaSnapshot.load(targetDatasource));
+               }
+               List<TableMigrationResult> results = scheduler.migrate(sourceTableNames);
+               job.setResults(results);
+               log.info("migration result: {}", results);
+               if (sync != null) {
+                   Set<String> copied = results.stream()
+                           .filter(result -> result.getStatus() == TableMigrationResult.Status.DONE)
+                           .map(TableMigrationResult::getTableName)
+                           .collect(Collectors.toSet());
+                   job.getControl().checkCancelled();
+                   sync.run(sourceSchema.getTables().stream()
+                                   .filter(table -> copied.contains(table.getName()))
+                                   .collect(Collectors.toList()),
+                           SchemaSnapshot.load(targetDatasource), job.getControl());
+               }
+               if (delta != null) {
+                   job.getControl().checkCancelled();
+                   delta.run(results.stream()
+                           .filter(result -> result.getStatus() == TableMigrationResult.Status.DONE)
+                           .map(TableMigrationResult::getTableName)
+                           .collect(Collectors.toList()), job.getControl(), job::setResults);
                }
            }
             log.info("move data done..");
-        } catch (Exception e) {
-            log.error("error : {}", e.getMessage(), e);
         } finally {
-            try {
-                if (sourceConnection != null) {
-                    sourceConnection.close();
-                }
-                if (targetConn != null) {
-                    targetConn.close();
-                }
-                log.info("end..");
-            } catch (Exception e) {
-                log.error("error : {}", e.getMessage(), e);
-            }
+            log.info("end..");
         }
     }
 
-    private List<String> getTableNamesByConn(Connection conn) throws Exception {
-        if (conn == null) {
-            throw new RuntimeException("conn is null");
+    @RequestMapping("/jobs")
+    public List<MigrationJob> jobs() {
+        return migrationJobService.list();
+    }
+
+    @RequestMapping("/jobs/{id}")
+    public MigrationJob job(@PathVariable String id) {
+        return getJob(id);
+    }
+
+    @RequestMapping("/jobs/{id}/pause")
+    public MigrationJob pause(@PathVariable String id) {
+        MigrationJob job = getJob(id);
+        job.getControl().pause();
+        return job;
+    }
+
+    @RequestMapping("/jobs/{id}/resume")
+    public MigrationJob resume(@PathVariable String id) {
+        MigrationJob job = getJob(id);
+        job.getControl().resume();
+        return job;
+    }
+
+    @RequestMapping("/jobs/{id}/cancel")
+    public MigrationJob cancel(@PathVariable String id) {
+        MigrationJob job = getJob(id);
+        job.getControl().cancel();
+        return job;
+    }
+
+    /**
+     * caps the rows read per second over all tables of the job, 0 lifts the cap
+     */
+    @RequestMapping("/jobs/{id}/throttle")
+    public MigrationJob throttle(@PathVariable String id, @RequestParam long rowsPerSecond) {
+        MigrationJob job = getJob(id);
+        job.getControl().throttle(rowsPerSecond);
+        return job;
+    }
+
+    private MigrationJob getJob(String id) {
+        MigrationJob job = migrationJobService.get(id);
+        if (job == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "no job " + id);
         }
-        // Get all table names
-        String[] types = {"TABLE"};
-        ResultSet resultSet = conn.getMetaData().getTables(conn.getCatalog(), null, "%", types);
-        List<String> tabNams = new ArrayList<>();
-        while (resultSet.next()) {
-            try {
-                String tableName = resultSet.getString("TABLE_NAME");
-                if (StringUtils.isNotEmpty(tableName)) {
-                    tabNams.add(tableName);
-                }
-            } catch (SQLException e) {
-                if (e.getMessage().contains("After end of result set")) {
-                    break;
-                }
+        return job;
+    }
+
+    /**
+     * progress of the tables of the running and past migrations
+     */
+    @RequestMapping("/metrics")
+    public List<TableMetrics> metrics() {
+        return migrationMetrics.snapshot();
+    }
+
+    /**
+     * runs delta passes over the tables already on the target, from the watermarks in the
+     * checkpoint journal, tables without one are upserted whole on the first pass
+     */
+    @RequestMapping("/delta")
+    public MigrationJob delta() {
+        return migrationJobService.submit(MigrationJob.Type.DELTA, job -> {
+            DeltaSync delta = new DeltaSync(source, targetDatasource, migrationProperties, migrationMetrics);
+            delta.run(SchemaSnapshot.load(source).getTableNames(), job.getControl(), job::setResults);
+        });
+    }
+
+    /**
+     * compares the tables on both sides by key range checksums, all tables the target has
+     * when no table is given
+     */
+    @RequestMapping("/verify")
+    public MigrationJob verify(@RequestParam(required = false) List<String> tables) {
+        return migrationJobService.submit(MigrationJob.Type.VERIFY, job -> {
+            List<String> tableNames = tables;
+            if (tableNames == null || tableNames.isEmpty()) {
+                SchemaSnapshot targetSchema = SchemaSnapshot.load(targetDatasource);
+                tableNames = SchemaSnapshot.load(source).getTableNames().stream()
+                        .filter(targetSchema::containsTable)
+                        .collect(Collectors.toList());
             }
-        }
+            List<TableVerification> results = tableNames.stream()
+                    .map(TableVerification::new)
+                    .collect(Collectors.toList());
+            job.setVerification(results);
+            TableVerifier verifier = new TableVerifier(source, targetDatasource, migrationProperties);
+            verifier.setJobControl(job.getControl());
+            verifier.verify(results);
+        });
+    }
 
-        return tabNams;
+    /**
+     * writes the tables, all of the source when none is given, as gzipped COPY segments with a
+     * manifest into the dump directory, without connecting to the target
+     */
+    @RequestMapping("/export")
+    public MigrationJob export(@RequestParam(required = false) List<String> tables) {
+        return migrationJobService.submit(MigrationJob.Type.EXPORT, job -> {
+            List<String> tableNames = tables == null || tables.isEmpty() ? SchemaSnapshot.load(source).getTableNames()
+                    : tables;
+            MigrationScheduler scheduler = new MigrationScheduler(source, null, migrationProperties,
+                    migrationMetrics);
+            scheduler.setJobControl(job.getControl());
+            scheduler.setDump(new DumpWriter(migrationProperties));
+            job.setResults(scheduler.migrate(tableNames));
+        });
+    }
+
+    /**
+     * copies the tables of the export in the dump directory into the target, all of them when
+     * none is given, without reading the source
+     */
+    @RequestMapping("/import")
+    public MigrationJob importDump(@RequestParam(required = false) List<String> tables) {
+        return migrationJobService.submit(MigrationJob.Type.IMPORT, job -> {
+            DumpImporter importer = new DumpImporter(targetDatasource, migrationProperties, migrationMetrics);
+            importer.setJobControl(job.getControl());
+            job.setResults(importer.importTables(tables));
+        });
     }
 
     @RequestMapping("fill")
-    @Transactional(rollbackFor = Exception.class)
-    public void file() {
-        Connection sourceConnection = null;
-        Connection targetConn = null;
-        try {
-            DataSource source = config.sourceDataSource();
-            DataSource targetDatasource = config.targetDatasource();
-            sourceConnection = source.getConnection();
-            targetConn = targetDatasource.getConnection();
-            List<String> sourceTableNames = getTableNamesByConn(sourceConnection);
-            List<String> targetTableNames = getTableNamesByConn(targetConn);
-
-            if (sourceTableNames.isEmpty()) {
-                return;
-            }
+    public MigrationJob file() {
+        return migrationJobService.submit(MigrationJob.Type.FILL, this::fill);
+    }
 
-            for (String sourceTable : sourceTableNames) {
-                if (targetTableNames.contains(sourceTable)) {
-                    String tabName = sourceTable;
-                    MigrationUtils.fillTableField(tabName, source, targetDatasource);
-                }
-            }
-        } catch (Exception e) {
-            log.error("error : {}", e.getMessage(), e);
-        } finally {
-            try {
-                if (sourceConnection != null) {
-                    sourceConnection.close();
-                }
-                if (targetConn != null) {
-                    targetConn.close();
-                }
-                log.info("end..");
-            } catch (Exception e) {
-                log.error("error : {}", e.getMessage(), e);
-            }
-        }
+    private void fill(MigrationJob job) throws Exception {
+        DdlPlanner planner = new DdlPlanner(targetDatasource, migrationProperties);
+        planner.setJobControl(job.getControl());
+        List<TableDdl> ddl = planner.plan(SchemaSnapshot.load(source), SchemaSnapshot.load(targetDatasource), false,
+                true, true, false);
+        job.setDdl(ddl);
+        planner.apply(ddl);
+        log.info("end..");
     }
 
 }
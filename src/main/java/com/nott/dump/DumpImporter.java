@@ -0,0 +1,253 @@
+package com.nott.dump;
+
+import com.nott.JobControl;
+import com.nott.MigrationMetrics;
+import com.nott.MigrationProgress;
+import com.nott.PgCopyWriter;
+import com.nott.TableMigrationResult;
+import com.nott.config.MigrationProperties;
+import com.nott.schema.ColumnSchema;
+import com.nott.schema.SchemaSnapshot;
+import com.nott.schema.TableSchema;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Copies the segments of an export into PostgreSQL, see {@link DumpWriter}.
+ * <p>
+ * Every segment is one COPY on its own connection, {@code dumpImportThreads} of them at a
+ * time over all tables. A segment is memory-mapped and inflated straight into the COPY
+ * stream, so the import neither holds it on the heap nor reads the source again. A segment
+ * copying another number of rows than the manifest lists fails its table, as does a target
+ * column of another type than the export was encoded for. The tables are emptied first, a
+ * failed import can simply run again.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Slf4j
+public class DumpImporter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final JdbcTemplate targetJdbc;
+    private final MigrationProperties properties;
+    private final MigrationMetrics metrics;
+    private JobControl jobControl = new JobControl();
+
+    /**
+     * @param metrics where the progress of the tables is published, may be null
+     */
+    public DumpImporter(DataSource target, MigrationProperties properties, MigrationMetrics metrics) {
+        this.targetJdbc = new JdbcTemplate(target);
+        this.properties = properties;
+        this.metrics = metrics;
+    }
+
+    public void setJobControl(JobControl jobControl) {
+        this.jobControl = jobControl;
+    }
+
+    /**
+     * @param tableNames tables to import, all tables of the manifest when null or empty
+     */
+    public List<TableMigrationResult> importTables(List<String> tableNames) throws IOException, InterruptedException {
+        Path dir = Paths.get(properties.getDumpDir());
+        DumpManifest manifest = DumpManifest.read(dir);
+        Map<String, TableMigrationResult> results = new LinkedHashMap<>();
+        Map<String, MigrationProgress> progresses = new LinkedHashMap<>();
+        List<DumpManifest.Table> tables = new ArrayList<>();
+        for (DumpManifest.Table table : manifest.getTables()) {
+            if (tableNames != null && !tableNames.isEmpty() && !tableNames.contains(table.getTableName())) {
+                continue;
+            }
+            TableMigrationResult result = new TableMigrationResult(table.getTableName());
+            result.setTotalRecords(table.getRows());
+            results.put(table.getTableName(), result);
+            progresses.put(table.getTableName(), metrics == null
+                    ? new MigrationProgress(table.getTableName(), table.getRows(), 1)
+                    : metrics.start(table.getTableName(), table.getRows(), 1));
+            tables.add(table);
+        }
+        log.info("importing {} tables from {}", tables.size(), dir.toAbsolutePath());
+        SchemaSnapshot targetSchema = SchemaSnapshot.load(targetJdbc.getDataSource());
+        int threads = Math.max(1, properties.getDumpImportThreads());
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                r -> new Thread(r, "m2p-import-" + threadIndex.incrementAndGet()));
+        Map<String, List<Future<?>>> futures = new LinkedHashMap<>();
+        try {
+            for (DumpManifest.Table table : tables) {
+                TableMigrationResult result = results.get(table.getTableName());
+                MigrationProgress progress = progresses.get(table.getTableName());
+                List<Future<?>> segments = new ArrayList<>();
+                futures.put(table.getTableName(), segments);
+                try {
+                    jobControl.checkCancelled();
+                    checkColumnTypes(table, targetSchema.getTable(table.getTableName()));
+                    if (properties.isDumpImportTruncate()) {
+                        targetJdbc.execute("truncate table " + table.getTableName());
+                    }
+                } catch (CancellationException e) {
+                    result.setStatus(TableMigrationResult.Status.CANCELLED);
+                    continue;
+                } catch (RuntimeException e) {
+                    fail(result, e);
+                    continue;
+                }
+                String copySql = new PgCopyWriter(targetJdbc, table.getTableName(),
+                        table.getColumns().toArray(new String[0])).getCopySql();
+                for (DumpManifest.Segment segment : table.getSegments()) {
+                    segments.add(executor.submit(() -> {
+                        copySegment(dir.resolve(segment.getFile()), copySql, segment, progress);
+                        return null;
+                    }));
+                }
+            }
+            for (Map.Entry<String, List<Future<?>>> entry : futures.entrySet()) {
+                await(entry.getValue(), results.get(entry.getKey()), progresses.get(entry.getKey()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return new ArrayList<>(results.values());
+    }
+
+    /**
+     * bits, bytes and booleans are written in the form of their column type, an export of an
+     * older version records no types and isn't checked
+     */
+    private static void checkColumnTypes(DumpManifest.Table table, TableSchema targetTable) {
+        if (targetTable == null) {
+            throw new IllegalStateException("table " + table.getTableName() + " is missing on the target");
+        }
+        for (int i = 0; i < table.getColumnTypes().size(); i++) {
+            String column = table.getColumns().get(i);
+            String type = table.getColumnTypes().get(i);
+            ColumnSchema targetColumn = targetTable.getColumn(column);
+            if (targetColumn == null || !type.equalsIgnoreCase(targetColumn.getColumnType())) {
+                throw new IllegalStateException(String.format(
+                        "table %s column %s is %s in the export, %s on the target", table.getTableName(), column,
+                        type, targetColumn == null ? "missing" : targetColumn.getColumnType()));
+            }
+        }
+    }
+
+    private void copySegment(Path file, String copySql, DumpManifest.Segment segment, MigrationProgress progress)
+            throws Exception {
+        jobControl.checkpoint(0);
+        long start = System.nanoTime();
+        try (InputStream in = new GZIPInputStream(openSegment(file), BUFFER_SIZE)) {
+            long rows = targetJdbc.execute((ConnectionCallback<Long>) con -> {
+                try {
+                    return new CopyManager(con.unwrap(BaseConnection.class)).copyIn(copySql, in, BUFFER_SIZE);
+                } catch (IOException e) {
+                    throw new SQLException("read segment " + file + " error", e);
+                }
+            });
+            progress.recordWrite(System.nanoTime() - start);
+            progress.addBytes(segment.getBytes());
+            progress.add(0, rows);
+            if (rows != segment.getRows()) {
+                throw new IllegalStateException(String.format("segment %s copied %d rows, the manifest has %d", file,
+                        rows, segment.getRows()));
+            }
+        }
+    }
+
+    /**
+     * maps the segment when it fits a buffer, a mapping outlives the channel it was made from
+     */
+    private static InputStream openSegment(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return Files.newInputStream(file);
+            }
+            return new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private static void await(List<Future<?>> segments, TableMigrationResult result, MigrationProgress progress)
+            throws InterruptedException {
+        for (Future<?> segment : segments) {
+            try {
+                segment.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof CancellationException) {
+                    result.setStatus(TableMigrationResult.Status.CANCELLED);
+                } else if (result.getStatus() != TableMigrationResult.Status.FAILED) {
+                    fail(result, e.getCause());
+                }
+            }
+        }
+        if (result.getStatus() == TableMigrationResult.Status.PENDING) {
+            result.setStatus(TableMigrationResult.Status.DONE);
+        }
+        progress.finish(result.getStatus() == TableMigrationResult.Status.DONE ? MigrationProgress.Phase.DONE
+                : result.getStatus() == TableMigrationResult.Status.CANCELLED ? MigrationProgress.Phase.CANCELLED
+                : MigrationProgress.Phase.FAILED);
+        result.setElapsedMillis(progress.getElapsedMillis());
+        log.info("table {} imported {} rows, {}", result.getTableName(), progress.getMoved(), result.getStatus());
+    }
+
+    private static void fail(TableMigrationResult result, Throwable e) {
+        log.error("import table {} error : {}", result.getTableName(), e.getMessage(), e);
+        result.setStatus(TableMigrationResult.Status.FAILED);
+        result.setError(e.getMessage());
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return len == 0 ? 0 : -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
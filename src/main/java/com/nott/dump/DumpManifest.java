@@ -0,0 +1,80 @@
+package com.nott.dump;
+
+import com.alibaba.fastjson.JSON;
+import lombok.Data;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The {@code manifest.json} of an export: the tables it holds, their columns and segments.
+ * Segments are gzipped COPY text, relative to the directory of the manifest.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Data
+public class DumpManifest {
+
+    public static final String FILE_NAME = "manifest.json";
+
+    private Date createdAt = new Date();
+
+    private List<Table> tables = new ArrayList<>();
+
+    @Data
+    public static class Table {
+
+        private String tableName;
+
+        /**
+         * target columns in the order of every line
+         */
+        private List<String> columns = new ArrayList<>();
+
+        /**
+         * PostgreSQL udt_name of every column, the COPY text is encoded for these
+         */
+        private List<String> columnTypes = new ArrayList<>();
+
+        private long rows;
+
+        private List<Segment> segments = new ArrayList<>();
+    }
+
+    @Data
+    public static class Segment {
+
+        private String file;
+
+        private long rows;
+
+        /**
+         * bytes of COPY text, before and after compression
+         */
+        private long bytes;
+
+        private long compressedBytes;
+    }
+
+    public static DumpManifest read(Path dir) throws IOException {
+        return JSON.parseObject(new String(Files.readAllBytes(dir.resolve(FILE_NAME)), StandardCharsets.UTF_8),
+                DumpManifest.class);
+    }
+
+    /**
+     * written to a temporary file first, a manifest is there whole or not at all
+     */
+    public void write(Path dir) throws IOException {
+        Path tmp = dir.resolve(FILE_NAME + ".tmp");
+        Files.write(tmp, JSON.toJSONString(this, true).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, dir.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,111 @@
+package com.nott.dump;
+
+import com.nott.LobColumns;
+import com.nott.PgCopyWriter;
+import com.nott.TableMigrationResult;
+import com.nott.config.MigrationProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Writes an export: every table as gzipped COPY segments under {@code dumpDir/<table>/},
+ * and a manifest listing them once the export ends.
+ * <p>
+ * The rows are read and encoded as a migration to the target would, a {@code DataTableMigration}
+ * given a {@link SegmentWriter} writes its batches there instead. The target isn't needed, the
+ * column types are those the DDL of the source table gives them, and the manifest records them
+ * for the import to check against the target. Tables of an earlier export into the same
+ * directory stay in the manifest unless they are exported again.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Slf4j
+public class DumpWriter {
+
+    private final Path dir;
+    private final MigrationProperties properties;
+    private final Map<String, SegmentWriter> writers = new LinkedHashMap<>();
+
+    public DumpWriter(MigrationProperties properties) throws IOException {
+        this.dir = Paths.get(properties.getDumpDir());
+        this.properties = properties;
+        Files.createDirectories(dir);
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    /**
+     * starts the segments of a table, replacing those of an earlier export
+     *
+     * @param columns target columns in the order of the rows
+     */
+    public SegmentWriter open(String tableName, PgCopyWriter copyWriter, LobColumns lobs, String[] columns)
+            throws IOException {
+        Path tableDir = dir.resolve(tableName);
+        deleteRecursively(tableDir);
+        Files.createDirectories(tableDir);
+        DumpManifest.Table table = new DumpManifest.Table();
+        table.setTableName(tableName);
+        table.getColumns().addAll(Arrays.asList(columns));
+        table.getColumnTypes().addAll(Arrays.asList(copyWriter.getColumnTypes()));
+        SegmentWriter writer = new SegmentWriter(dir, table, copyWriter, lobs, properties.getDumpSegmentBytes(),
+                properties.getDumpCompressionLevel());
+        synchronized (writers) {
+            writers.put(tableName, writer);
+        }
+        return writer;
+    }
+
+    /**
+     * Closes the segments and writes the manifest. A table that didn't finish is left out,
+     * its segments are partial.
+     */
+    public DumpManifest finish(List<TableMigrationResult> results) throws IOException {
+        DumpManifest manifest = Files.exists(dir.resolve(DumpManifest.FILE_NAME)) ? DumpManifest.read(dir)
+                : new DumpManifest();
+        manifest.getTables().removeIf(table -> writers.containsKey(table.getTableName()));
+        for (TableMigrationResult result : results) {
+            SegmentWriter writer = writers.get(result.getTableName());
+            if (writer == null) {
+                continue;
+            }
+            DumpManifest.Table table = writer.close();
+            if (result.getStatus() == TableMigrationResult.Status.DONE) {
+                manifest.getTables().add(table);
+                log.info("table {} exported {} rows in {} segments", table.getTableName(), table.getRows(),
+                        table.getSegments().size());
+            } else {
+                log.warn("table {} {}, left out of the manifest", table.getTableName(), result.getStatus());
+            }
+        }
+        manifest.setCreatedAt(new Date());
+        manifest.write(dir);
+        return manifest;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.nott.dump;
+
+import com.nott.LobColumns;
+import com.nott.PgCopyWriter;
+import com.nott.RowBatch;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the batches of one table into its segments, see {@link DumpWriter}.
+ * <p>
+ * The writers and key ranges of a table share it. A batch is appended whole to an open
+ * segment no other writer is using, so they encode and compress side by side, and only
+ * finishing a segment takes the lock of the table. A segment is finished once it holds
+ * {@code dumpSegmentBytes} of COPY text. Lines are in the order the batches come in, which
+ * doesn't matter to a COPY.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Slf4j
+public class SegmentWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path dir;
+    private final PgCopyWriter copyWriter;
+    private final LobColumns lobs;
+    private final long segmentBytes;
+    private final int compressionLevel;
+    private final DumpManifest.Table table;
+
+    /**
+     * open segments no writer is appending to
+     */
+    private final Deque<OpenSegment> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger segmentIndex = new AtomicInteger();
+
+    SegmentWriter(Path dir, DumpManifest.Table table, PgCopyWriter copyWriter, LobColumns lobs, long segmentBytes,
+                  int compressionLevel) {
+        this.dir = dir;
+        this.table = table;
+        this.copyWriter = copyWriter;
+        this.lobs = lobs;
+        this.segmentBytes = segmentBytes;
+        this.compressionLevel = compressionLevel;
+    }
+
+    public void write(RowBatch rows) throws IOException, SQLException {
+        OpenSegment open = idle.pollFirst();
+        if (open == null) {
+            open = openSegment();
+        }
+        boolean written = false;
+        try {
+            copyWriter.writeTo(rows, lobs, open.out);
+            written = true;
+        } finally {
+            if (!written) {
+                // the segment holds part of the batch, the table fails and is left out of the manifest
+                closeQuietly(open);
+            }
+        }
+        open.segment.setRows(open.segment.getRows() + rows.size());
+        if (open.out.count >= segmentBytes) {
+            closeSegment(open);
+        } else {
+            idle.addFirst(open);
+        }
+    }
+
+    /**
+     * finishes the open segments, every writer of the table must be done
+     */
+    DumpManifest.Table close() throws IOException {
+        OpenSegment open;
+        while ((open = idle.pollFirst()) != null) {
+            closeSegment(open);
+        }
+        synchronized (table) {
+            table.getSegments().sort(Comparator.comparing(DumpManifest.Segment::getFile));
+            return table;
+        }
+    }
+
+    private OpenSegment openSegment() throws IOException {
+        DumpManifest.Segment segment = new DumpManifest.Segment();
+        segment.setFile(String.format("%1$s/%1$s-%2$05d.copy.gz", table.getTableName(),
+                segmentIndex.incrementAndGet()));
+        OutputStream file = new BufferedOutputStream(Files.newOutputStream(dir.resolve(segment.getFile())),
+                BUFFER_SIZE);
+        return new OpenSegment(segment, new CountingOutputStream(new GZIPOutputStream(file, BUFFER_SIZE) {
+            {
+                def.setLevel(compressionLevel);
+            }
+        }));
+    }
+
+    private void closeSegment(OpenSegment open) throws IOException {
+        open.out.close();
+        open.segment.setBytes(open.out.count);
+        open.segment.setCompressedBytes(Files.size(dir.resolve(open.segment.getFile())));
+        synchronized (table) {
+            table.getSegments().add(open.segment);
+            table.setRows(table.getRows() + open.segment.getRows());
+        }
+    }
+
+    private static void closeQuietly(OpenSegment open) {
+        try {
+            open.out.close();
+        } catch (IOException e) {
+            log.warn("close segment {} error : {}", open.segment.getFile(), e.getMessage());
+        }
+    }
+
+    private static class OpenSegment {
+        final DumpManifest.Segment segment;
+        final CountingOutputStream out;
+
+        OpenSegment(DumpManifest.Segment segment, CountingOutputStream out) {
+            this.segment = segment;
+            this.out = out;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
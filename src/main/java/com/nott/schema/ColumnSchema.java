@@ -0,0 +1,61 @@
+package com.nott.schema;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A column as read by {@link SchemaSnapshot}.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Getter
+@ToString
+public class ColumnSchema {
+
+    private final String name;
+
+    /**
+     * 1 based position in the table
+     */
+    private final int position;
+
+    /**
+     * upper case type without size, with " UNSIGNED" for unsigned MySQL numbers,
+     * the key of {@code MigrationUtils.mapMySqlTypeToPostgres}
+     */
+    private final String typeName;
+
+    /**
+     * full type as declared, e.g. {@code int(10) unsigned}
+     */
+    private final String columnType;
+
+    private final boolean nullable;
+
+    private final boolean autoIncrement;
+
+    private final String defaultValue;
+
+    private final Long characterMaximumLength;
+
+    private final Integer numericPrecision;
+
+    private final Integer numericScale;
+
+    public ColumnSchema(String name, int position, String typeName, String columnType, boolean nullable,
+                        boolean autoIncrement, String defaultValue, Long characterMaximumLength,
+                        Integer numericPrecision, Integer numericScale) {
+        this.name = name;
+        this.position = position;
+        this.typeName = typeName;
+        this.columnType = columnType;
+        this.nullable = nullable;
+        this.autoIncrement = autoIncrement;
+        this.defaultValue = defaultValue;
+        this.characterMaximumLength = characterMaximumLength;
+        this.numericPrecision = numericPrecision;
+        this.numericScale = numericScale;
+    }
+}
@@ -0,0 +1,151 @@
+package com.nott.schema;
+
+import com.nott.JobControl;
+import com.nott.config.MigrationProperties;
+import com.nott.utils.MigrationUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Brings the tables of the target in line with the source in one pass.
+ * <p>
+ * {@link #plan} diffs the two schemas into at most one statement per table: a CREATE TABLE
+ * for a missing table, a single ALTER TABLE adding all missing columns for an existing one.
+ * {@link #apply} runs the statements on {@code ddlThreads} connections at a time, each
+ * table's statement being independent of the others. Every table gets a {@link TableDdl}
+ * telling what was done, a failing table is logged and reported without stopping the rest.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Slf4j
+public class DdlPlanner {
+
+    private final JdbcTemplate targetJdbc;
+    private final MigrationProperties properties;
+    private JobControl jobControl = new JobControl();
+
+    public DdlPlanner(DataSource target, MigrationProperties properties) {
+        this.targetJdbc = new JdbcTemplate(target);
+        this.properties = properties;
+    }
+
+    public void setJobControl(JobControl jobControl) {
+        this.jobControl = jobControl;
+    }
+
+    /**
+     * @param create         create the tables the target lacks
+     * @param addColumns     add the columns the existing tables lack
+     * @param withPrimaryKey false for a bulk load, which adds the key after the rows are in
+     * @param unlogged       true for a fast load, which sets the table logged after the rows are in
+     */
+    public List<TableDdl> plan(SchemaSnapshot source, SchemaSnapshot target, boolean create, boolean addColumns,
+                               boolean withPrimaryKey, boolean unlogged) {
+        List<TableDdl> plan = new ArrayList<>();
+        for (TableSchema sourceTable : source.getTables()) {
+            TableDdl ddl = new TableDdl(sourceTable.getName());
+            plan.add(ddl);
+            TableSchema targetTable = target.getTable(sourceTable.getName());
+            try {
+                if (targetTable == null && create) {
+                    ddl.setAction(TableDdl.Action.CREATE);
+                    ddl.setStatement(MigrationUtils.generateCreateTableStatement(sourceTable, withPrimaryKey,
+                            unlogged));
+                    ddl.setColumns(sourceTable.getColumns().stream().map(ColumnSchema::getName)
+                            .collect(Collectors.toList()));
+                } else if (targetTable != null && addColumns) {
+                    List<ColumnSchema> missing = MigrationUtils.getMissingColumns(sourceTable, targetTable);
+                    if (!missing.isEmpty()) {
+                        ddl.setAction(TableDdl.Action.ADD_COLUMNS);
+                        ddl.setStatement(MigrationUtils.generateAddColumnsStatement(targetTable, missing));
+                        ddl.setColumns(missing.stream().map(column -> column.getName().toLowerCase())
+                                .collect(Collectors.toList()));
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                // a type without a PostgreSQL counterpart
+                log.error("plan ddl of table {} error : {}", sourceTable.getName(), e.getMessage());
+                ddl.setStatus(TableDdl.Status.FAILED);
+                ddl.setError(e.getMessage());
+            }
+            if (ddl.getStatus() == TableDdl.Status.PLANNED && ddl.getAction() == TableDdl.Action.NONE) {
+                ddl.setStatus(TableDdl.Status.SKIPPED);
+            }
+        }
+        log.info("ddl plan: {} tables to create, {} to add columns to", count(plan, TableDdl.Action.CREATE),
+                count(plan, TableDdl.Action.ADD_COLUMNS));
+        return plan;
+    }
+
+    /**
+     * runs the planned statements, the {@link TableDdl}s are updated as they finish
+     */
+    public void apply(List<TableDdl> plan) throws InterruptedException {
+        List<TableDdl> planned = plan.stream().filter(ddl -> ddl.getStatus() == TableDdl.Status.PLANNED)
+                .collect(Collectors.toList());
+        if (planned.isEmpty()) {
+            return;
+        }
+        int threads = Math.min(Math.max(1, properties.getDdlThreads()), planned.size());
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                r -> new Thread(r, "m2p-ddl-" + threadIndex.incrementAndGet()));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (TableDdl ddl : planned) {
+                futures.add(executor.submit(() -> apply(ddl)));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // every statement records its own failure
+                    log.error("ddl error : {}", e.getMessage(), e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("ddl applied: {} tables, {} failed", count(plan, TableDdl.Status.APPLIED),
+                count(plan, TableDdl.Status.FAILED));
+    }
+
+    private void apply(TableDdl ddl) {
+        long start = System.currentTimeMillis();
+        try {
+            jobControl.checkCancelled();
+            log.info("table {} ddl: {}", ddl.getTableName(), ddl.getStatement());
+            targetJdbc.execute(ddl.getStatement());
+            ddl.setStatus(TableDdl.Status.APPLIED);
+        } catch (CancellationException e) {
+            ddl.setStatus(TableDdl.Status.CANCELLED);
+        } catch (RuntimeException e) {
+            log.error("table {} ddl error : {}", ddl.getTableName(), e.getMessage());
+            ddl.setStatus(TableDdl.Status.FAILED);
+            ddl.setError(e.getMessage());
+        } finally {
+            ddl.setElapsedMillis(System.currentTimeMillis() - start);
+        }
+    }
+
+    private static long count(List<TableDdl> plan, TableDdl.Action action) {
+        return plan.stream().filter(ddl -> ddl.getAction() == action).count();
+    }
+
+    private static long count(List<TableDdl> plan, TableDdl.Status status) {
+        return plan.stream().filter(ddl -> ddl.getStatus() == status).count();
+    }
+}
@@ -0,0 +1,38 @@
+package com.nott.schema;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An index as read by {@link SchemaSnapshot}, the primary key included.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Getter
+@ToString
+public class IndexSchema {
+
+    private final String name;
+
+    private final boolean unique;
+
+    private final boolean primary;
+
+    /**
+     * in index order
+     */
+    private final List<String> columns;
+
+    public IndexSchema(String name, boolean unique, boolean primary, List<String> columns) {
+        this.name = name;
+        this.unique = unique;
+        this.primary = primary;
+        this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+    }
+}
@@ -0,0 +1,276 @@
+package com.nott.schema;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tables, columns, primary keys and indexes of one schema, read in a few bulk queries.
+ * <p>
+ * MySQL and PostgreSQL are read from {@code information_schema.COLUMNS},
+ * {@code KEY_COLUMN_USAGE} and, for the indexes, {@code STATISTICS} on MySQL and
+ * {@code pg_index} on PostgreSQL, which has no STATISTICS view. Other databases fall
+ * back to {@link DatabaseMetaData}. The snapshot doesn't change once loaded, load a new
+ * one after changing the schema.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Slf4j
+public class SchemaSnapshot {
+
+    private static final String COLUMNS_SQL = "select c.TABLE_NAME, c.COLUMN_NAME, c.ORDINAL_POSITION, c.DATA_TYPE,"
+            + " %s, c.IS_NULLABLE, %s, c.COLUMN_DEFAULT, c.CHARACTER_MAXIMUM_LENGTH, c.NUMERIC_PRECISION,"
+            + " c.NUMERIC_SCALE from information_schema.COLUMNS c join information_schema.TABLES t"
+            + " on t.TABLE_SCHEMA = c.TABLE_SCHEMA and t.TABLE_NAME = c.TABLE_NAME"
+            + " where c.TABLE_SCHEMA = %s and t.TABLE_TYPE = 'BASE TABLE' %s"
+            + " order by c.TABLE_NAME, c.ORDINAL_POSITION";
+
+    private static final String PRIMARY_KEYS_SQL = "select k.TABLE_NAME, k.COLUMN_NAME"
+            + " from information_schema.KEY_COLUMN_USAGE k join information_schema.TABLE_CONSTRAINTS c"
+            + " on c.CONSTRAINT_SCHEMA = k.CONSTRAINT_SCHEMA and c.CONSTRAINT_NAME = k.CONSTRAINT_NAME"
+            + " and c.TABLE_NAME = k.TABLE_NAME"
+            + " where k.TABLE_SCHEMA = %s and c.CONSTRAINT_TYPE = 'PRIMARY KEY' %s"
+            + " order by k.TABLE_NAME, k.ORDINAL_POSITION";
+
+    private static final String MYSQL_INDEXES_SQL = "select TABLE_NAME, INDEX_NAME, NON_UNIQUE, COLUMN_NAME"
+            + " from information_schema.STATISTICS where TABLE_SCHEMA = database() %s"
+            + " order by TABLE_NAME, INDEX_NAME, SEQ_IN_INDEX";
+
+    private static final String POSTGRES_INDEXES_SQL = "select t.relname table_name, i.relname index_name,"
+            + " not ix.indisunique non_unique, a.attname column_name from pg_index ix"
+            + " join pg_class t on t.oid = ix.indrelid join pg_class i on i.oid = ix.indexrelid"
+            + " join pg_namespace n on n.oid = t.relnamespace"
+            + " cross join lateral unnest(ix.indkey::int2[]) with ordinality k(attnum, seq)"
+            + " left join pg_attribute a on a.attrelid = t.oid and a.attnum = k.attnum"
+            + " where n.nspname = current_schema() %s order by t.relname, i.relname, k.seq";
+
+    private final Map<String, TableSchema> tables;
+
+    private SchemaSnapshot(Map<String, TableSchema> tables) {
+        this.tables = Collections.unmodifiableMap(tables);
+    }
+
+    public static SchemaSnapshot load(DataSource dataSource) {
+        return load(dataSource, null);
+    }
+
+    /**
+     * @param tableName the only table to read, null for all of them
+     */
+    public static SchemaSnapshot load(DataSource dataSource, String tableName) {
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        String product = jdbc.execute((ConnectionCallback<String>) con ->
+                con.getMetaData().getDatabaseProductName().toLowerCase());
+        long start = System.currentTimeMillis();
+        Map<String, Builder> builders;
+        if (product.contains("mysql")) {
+            builders = loadInformationSchema(jdbc, tableName, true);
+        } else if (product.contains("postgresql")) {
+            builders = loadInformationSchema(jdbc, tableName, false);
+        } else {
+            builders = jdbc.execute((ConnectionCallback<Map<String, Builder>>) con -> loadJdbcMetaData(con, tableName));
+        }
+        Map<String, TableSchema> tables = new LinkedHashMap<>();
+        builders.forEach((key, builder) -> tables.put(key, builder.build()));
+        log.info("read {} tables of the {} schema in {} ms", tables.size(), product,
+                System.currentTimeMillis() - start);
+        return new SchemaSnapshot(tables);
+    }
+
+    private static Map<String, Builder> loadInformationSchema(JdbcTemplate jdbc, String tableName, boolean mysql) {
+        String schema = mysql ? "database()" : "current_schema()";
+        Object[] params = tableName == null ? new Object[0] : new Object[]{tableName};
+        Map<String, Builder> builders = new LinkedHashMap<>();
+        jdbc.query(String.format(COLUMNS_SQL,
+                mysql ? "c.COLUMN_TYPE" : "c.UDT_NAME",
+                mysql ? "c.EXTRA" : "c.IS_IDENTITY",
+                schema, filter("c.TABLE_NAME", tableName)), rs -> {
+            String dataType = rs.getString(4).toUpperCase();
+            String columnType = rs.getString(5);
+            String extra = rs.getString(7);
+            String defaultValue = rs.getString(8);
+            boolean autoIncrement = mysql ? extra != null && extra.toLowerCase().contains("auto_increment")
+                    : "YES".equalsIgnoreCase(extra) || (defaultValue != null && defaultValue.startsWith("nextval("));
+            if (mysql && columnType.toLowerCase().contains("unsigned")) {
+                dataType = dataType + " UNSIGNED";
+            }
+            builder(builders, rs.getString(1)).columns.add(new ColumnSchema(rs.getString(2), rs.getInt(3),
+                    dataType, columnType, "YES".equalsIgnoreCase(rs.getString(6)), autoIncrement, defaultValue,
+                    getLong(rs, 9), getInteger(rs, 10), getInteger(rs, 11)));
+        }, params);
+        jdbc.query(String.format(PRIMARY_KEYS_SQL, schema, filter("k.TABLE_NAME", tableName)),
+                rs -> {
+                    Builder builder = builders.get(rs.getString(1).toLowerCase());
+                    if (builder != null) {
+                        builder.primaryKey.add(rs.getString(2));
+                    }
+                }, params);
+        jdbc.query(String.format(mysql ? MYSQL_INDEXES_SQL : POSTGRES_INDEXES_SQL,
+                filter(mysql ? "TABLE_NAME" : "t.relname", tableName)),
+                rs -> {
+                    Builder builder = builders.get(rs.getString(1).toLowerCase());
+                    if (builder != null) {
+                        builder.addIndexColumn(rs.getString(2), !rs.getBoolean(3), rs.getString(4));
+                    }
+                }, params);
+        return builders;
+    }
+
+    private static Map<String, Builder> loadJdbcMetaData(Connection con, String tableName) throws SQLException {
+        DatabaseMetaData metaData = con.getMetaData();
+        String catalog = con.getCatalog();
+        String schema = con.getSchema();
+        Map<String, Builder> builders = new LinkedHashMap<>();
+        try (ResultSet rs = metaData.getTables(catalog, schema, "%", new String[]{"TABLE"})) {
+            while (rs.next()) {
+                if (tableName == null || tableName.equalsIgnoreCase(rs.getString("TABLE_NAME"))) {
+                    builder(builders, rs.getString("TABLE_NAME"));
+                }
+            }
+        }
+        try (ResultSet rs = metaData.getColumns(catalog, schema, "%", "%")) {
+            while (rs.next()) {
+                Builder builder = builders.get(rs.getString("TABLE_NAME").toLowerCase());
+                if (builder == null) {
+                    continue;
+                }
+                String typeName = rs.getString("TYPE_NAME");
+                builder.columns.add(new ColumnSchema(rs.getString("COLUMN_NAME"), rs.getInt("ORDINAL_POSITION"),
+                        typeName.toUpperCase(), typeName, rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls,
+                        "YES".equalsIgnoreCase(rs.getString("IS_AUTOINCREMENT")), rs.getString("COLUMN_DEF"),
+                        getLong(rs, "COLUMN_SIZE"), getInteger(rs, "COLUMN_SIZE"), getInteger(rs, "DECIMAL_DIGITS")));
+            }
+        }
+        // no bulk call for keys and indexes, one each per table
+        for (Builder builder : builders.values()) {
+            List<String[]> keyColumns = new ArrayList<>();
+            try (ResultSet rs = metaData.getPrimaryKeys(catalog, schema, builder.name)) {
+                while (rs.next()) {
+                    keyColumns.add(new String[]{rs.getString("COLUMN_NAME"), rs.getString("KEY_SEQ")});
+                }
+            }
+            keyColumns.sort((a, b) -> Integer.compare(Integer.parseInt(a[1]), Integer.parseInt(b[1])));
+            keyColumns.forEach(keyColumn -> builder.primaryKey.add(keyColumn[0]));
+            try (ResultSet rs = metaData.getIndexInfo(catalog, schema, builder.name, false, true)) {
+                while (rs.next()) {
+                    if (rs.getString("INDEX_NAME") != null) {
+                        builder.addIndexColumn(rs.getString("INDEX_NAME"), !rs.getBoolean("NON_UNIQUE"),
+                                rs.getString("COLUMN_NAME"));
+                    }
+                }
+            }
+        }
+        return builders;
+    }
+
+    private static String filter(String column, String tableName) {
+        return tableName == null ? "" : "and lower(" + column + ") = lower(?)";
+    }
+
+    private static Builder builder(Map<String, Builder> builders, String tableName) {
+        return builders.computeIfAbsent(tableName.toLowerCase(), key -> new Builder(tableName));
+    }
+
+    private static Long getLong(ResultSet rs, int column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Long getLong(ResultSet rs, String column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Integer getInteger(ResultSet rs, int column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Integer getInteger(ResultSet rs, String column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    /**
+     * @return the table, null when the schema has no table of that name in any case
+     */
+    public TableSchema getTable(String tableName) {
+        return tables.get(tableName.toLowerCase());
+    }
+
+    public boolean containsTable(String tableName) {
+        return tables.containsKey(tableName.toLowerCase());
+    }
+
+    public List<String> getTableNames() {
+        List<String> names = new ArrayList<>();
+        tables.values().forEach(table -> names.add(table.getName()));
+        return names;
+    }
+
+    public List<TableSchema> getTables() {
+        return new ArrayList<>(tables.values());
+    }
+
+    private static class Builder {
+
+        private final String name;
+        private final List<ColumnSchema> columns = new ArrayList<>();
+        private final List<String> primaryKey = new ArrayList<>();
+        private final Map<String, IndexBuilder> indexes = new LinkedHashMap<>();
+
+        Builder(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @param column null for an expression, which drops the whole index
+         */
+        void addIndexColumn(String indexName, boolean unique, String column) {
+            IndexBuilder index = indexes.computeIfAbsent(indexName, key -> new IndexBuilder(unique));
+            if (column == null) {
+                index.expression = true;
+            } else {
+                index.columns.add(column);
+            }
+        }
+
+        TableSchema build() {
+            List<IndexSchema> indexSchemas = new ArrayList<>();
+            indexes.forEach((indexName, index) -> {
+                if (index.expression) {
+                    log.info("table {} skip index {} on an expression", name, indexName);
+                    return;
+                }
+                // MySQL calls the key PRIMARY, PostgreSQL <table>_pkey
+                boolean primary = !primaryKey.isEmpty() && index.unique && index.columns.equals(primaryKey);
+                indexSchemas.add(new IndexSchema(indexName, index.unique, primary, index.columns));
+            });
+            return new TableSchema(name, columns, primaryKey, indexSchemas);
+        }
+    }
+
+    private static class IndexBuilder {
+
+        private final boolean unique;
+        private final List<String> columns = new ArrayList<>();
+        private boolean expression;
+
+        IndexBuilder(boolean unique) {
+            this.unique = unique;
+        }
+    }
+}
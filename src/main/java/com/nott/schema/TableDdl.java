@@ -0,0 +1,45 @@
+package com.nott.schema;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The statement {@link DdlPlanner} planned for one table, and how applying it went.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Data
+public class TableDdl {
+
+    public enum Action {
+        CREATE, ADD_COLUMNS, NONE
+    }
+
+    public enum Status {
+        PLANNED, APPLIED, SKIPPED, FAILED, CANCELLED
+    }
+
+    private final String tableName;
+
+    private Action action = Action.NONE;
+
+    private Status status = Status.PLANNED;
+
+    /**
+     * null when the table needs nothing or its statement couldn't be planned
+     */
+    private String statement;
+
+    /**
+     * columns the statement adds, all of them for a new table
+     */
+    private List<String> columns = new ArrayList<>();
+
+    private long elapsedMillis;
+
+    private String error;
+}
@@ -0,0 +1,57 @@
+package com.nott.schema;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Columns, primary key and indexes of a table as read by {@link SchemaSnapshot}.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Getter
+@ToString
+public class TableSchema {
+
+    private final String name;
+
+    /**
+     * in table order
+     */
+    private final List<ColumnSchema> columns;
+
+    /**
+     * in key order, empty when the table has none
+     */
+    private final List<String> primaryKey;
+
+    private final List<IndexSchema> indexes;
+
+    public TableSchema(String name, List<ColumnSchema> columns, List<String> primaryKey, List<IndexSchema> indexes) {
+        this.name = name;
+        this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+        this.primaryKey = Collections.unmodifiableList(new ArrayList<>(primaryKey));
+        this.indexes = Collections.unmodifiableList(new ArrayList<>(indexes));
+    }
+
+    public String[] getColumnNames() {
+        return columns.stream().map(ColumnSchema::getName).toArray(String[]::new);
+    }
+
+    /**
+     * @return the column, null when the table has no column of that name in any case
+     */
+    public ColumnSchema getColumn(String name) {
+        for (ColumnSchema column : columns) {
+            if (column.getName().equalsIgnoreCase(name)) {
+                return column;
+            }
+        }
+        return null;
+    }
+}
@@ -1,9 +1,10 @@
 package com.nott.utils;
 
+import com.nott.schema.ColumnSchema;
+import com.nott.schema.TableSchema;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.dao.DataAccessException;
-import org.springframework.jdbc.BadSqlGrammarException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.util.Assert;
 
@@ -18,6 +19,11 @@ public class MigrationUtils {
 
     private static final Map<String, String> MYSQL_TO_POSTGRES_TYPE_MAP;
 
+    /**
+     * the udt_name PostgreSQL reports for the types the columns are created with
+     */
+    private static final Map<String, String> POSTGRES_UDT_NAMES;
+
     static {
         MYSQL_TO_POSTGRES_TYPE_MAP = new HashMap<>();
         MYSQL_TO_POSTGRES_TYPE_MAP.put("BIT", "BIT");
@@ -37,6 +43,7 @@ public class MigrationUtils {
         MYSQL_TO_POSTGRES_TYPE_MAP.put("DATE", "DATE");
         MYSQL_TO_POSTGRES_TYPE_MAP.put("TIME", "TIME");
         MYSQL_TO_POSTGRES_TYPE_MAP.put("DATETIME", "TIMESTAMP");
+        MYSQL_TO_POSTGRES_TYPE_MAP.put("TIMESTAMP", "TIMESTAMP");
         MYSQL_TO_POSTGRES_TYPE_MAP.put("YEAR", "SMALLINT");
         MYSQL_TO_POSTGRES_TYPE_MAP.put("CHAR", "CHAR");
         MYSQL_TO_POSTGRES_TYPE_MAP.put("VARCHAR", "VARCHAR");
@@ -50,91 +57,73 @@ public class MigrationUtils {
         MYSQL_TO_POSTGRES_TYPE_MAP.put("MEDIUMTEXT", "TEXT");
         MYSQL_TO_POSTGRES_TYPE_MAP.put("LONGTEXT", "TEXT");
         MYSQL_TO_POSTGRES_TYPE_MAP.put("TEXT", "TEXT");
-    }
-
-    public static String getPrimaryKeyByTableName(Connection conn, String tableNamePattern) throws SQLException {
-
-        DatabaseMetaData dbMetaData = conn.getMetaData();
-
-        ResultSet tabs = dbMetaData.getTables(null, null, tableNamePattern, new String[]{"TABLE"});
-
-        List<String> pkColList = new ArrayList<>();
-
-        while (tabs.next()) {
-            ResultSet resultSet = dbMetaData.getPrimaryKeys(null, tabs.getString("TABLE_SCHEM"),
-                    tabs.getString("TABLE_NAME"));
-
-            while (resultSet.next()) {
-                pkColList.add(resultSet.getString("COLUMN_NAME"));
-            }
-        }
-        conn.close();
 
-        return pkColList.stream().collect(Collectors.joining(","));
+        POSTGRES_UDT_NAMES = new HashMap<>();
+        POSTGRES_UDT_NAMES.put("BIT", "bit");
+        POSTGRES_UDT_NAMES.put("SMALLINT", "int2");
+        POSTGRES_UDT_NAMES.put("INTEGER", "int4");
+        POSTGRES_UDT_NAMES.put("SERIAL", "int4");
+        POSTGRES_UDT_NAMES.put("BIGINT", "int8");
+        POSTGRES_UDT_NAMES.put("BIGSERIAL", "int8");
+        POSTGRES_UDT_NAMES.put("NUMERIC(20)", "numeric");
+        POSTGRES_UDT_NAMES.put("DECIMAL", "numeric");
+        POSTGRES_UDT_NAMES.put("REAL", "float4");
+        POSTGRES_UDT_NAMES.put("DOUBLE PRECISION", "float8");
+        POSTGRES_UDT_NAMES.put("DATE", "date");
+        POSTGRES_UDT_NAMES.put("TIME", "time");
+        POSTGRES_UDT_NAMES.put("TIMESTAMP", "timestamp");
+        POSTGRES_UDT_NAMES.put("CHAR", "bpchar");
+        POSTGRES_UDT_NAMES.put("VARCHAR", "varchar");
+        POSTGRES_UDT_NAMES.put("BYTEA", "bytea");
+        POSTGRES_UDT_NAMES.put("TEXT", "text");
     }
 
-    public static String[] getColumnsByTableName(Connection conn, String tableNamePattern) throws SQLException {
-
-        DatabaseMetaData dbMetaData = conn.getMetaData();
-
-        ResultSet tabs = dbMetaData.getTables(null, null, tableNamePattern, new String[]{"TABLE"});
-
-        List<String> columnList = new ArrayList<>();
-
-        while (tabs.next()) {
-            ResultSet resultSet = dbMetaData.getColumns(null, tabs.getString("TABLE_SCHEM"),
-                    tabs.getString("TABLE_NAME"), null);
-            while (resultSet.next()) {
-                columnList.add(resultSet.getString("COLUMN_NAME"));
-            }
-        }
-        conn.close();
-        return columnList.toArray(new String[columnList.size()]);
+    public static void createTableBySourceTabName(TableSchema sourceTable, Connection postgresConn) throws Exception {
+        createTableBySourceTabName(sourceTable, postgresConn, true, false);
     }
 
-    public static void createTableBySourceTabName(Connection mysqlConn, Connection postgresConn, String tableName) throws Exception {
-        Assert.isTrue(mysqlConn != null,
-                "source con is nul ");
+    /**
+     * @param withPrimaryKey false for a bulk load, which adds the key after the rows are in
+     * @param unlogged       true for a fast load, which sets the table logged after the rows are in
+     */
+    public static void createTableBySourceTabName(TableSchema sourceTable, Connection postgresConn,
+                                                  boolean withPrimaryKey, boolean unlogged) throws Exception {
+        Assert.isTrue(sourceTable != null,
+                "source table is nul ");
         Assert.isTrue(postgresConn != null,
                 "target con is nul");
-        String createSql = generateCreateTableStatement(tableName, mysqlConn);
+        String tableName = sourceTable.getName();
+        String createSql = generateCreateTableStatement(sourceTable, withPrimaryKey, unlogged);
         try (PreparedStatement createTableStmt = postgresConn.prepareStatement(createSql)) {
             createTableStmt.executeUpdate();
             log.info("Table " + tableName + " created successfully.");
         } catch (SQLException ex) {
-            log.info("Failed to create table " + tableName);
-
+            log.error("Failed to create table {} : {}", tableName, ex.getMessage());
+            throw ex;
         }
-        //mysqlConn.close();
     }
 
-    private static String generateCreateTableStatement(String tableName, Connection conn) throws SQLException {
-        StringBuilder sb = new StringBuilder("CREATE TABLE ");
-        sb.append(tableName).append(" (");
-
-        // Get column names and data types from MySQL database
-        DatabaseMetaData metadata = conn.getMetaData();
-        ResultSet rs = metadata.getColumns(conn.getCatalog(), null, tableName, null);
-        while (rs.next()) {
-            // MySQL column name and type
-            String columnName = rs.getString("COLUMN_NAME");
-            String dataType = rs.getString("TYPE_NAME");
-            boolean isAutoIncrement = rs.getBoolean("IS_AUTOINCREMENT");
-            if (isAutoIncrement) {
-                dataType = "SERIAL";
-            }
+    public static String generateCreateTableStatement(TableSchema sourceTable, boolean withPrimaryKey,
+                                                       boolean unlogged) {
+        StringBuilder sb = new StringBuilder(unlogged ? "CREATE UNLOGGED TABLE " : "CREATE TABLE ");
+        sb.append(sourceTable.getName()).append(" (");
+
+        for (ColumnSchema column : sourceTable.getColumns()) {
             // PostgreSQL data type mapping
-            String postgresDataType = mapMySqlTypeToPostgres(dataType);
+            String postgresDataType = getPostgresType(column);
 
-            sb.append(columnName).append(" ").append(postgresDataType).append(", ");
+            sb.append(column.getName()).append(" ").append(postgresDataType);
+            if (!withPrimaryKey && sourceTable.getPrimaryKey().contains(column.getName())) {
+                // the key added after the load needs them
+                sb.append(" NOT NULL");
+            }
+            sb.append(", ");
         }
         sb.setLength(sb.length() - 2);  // Remove trailing comma
 
-        // Set primary key constraint
-        ResultSet pkRs = metadata.getPrimaryKeys(null, null, tableName);
-        if (pkRs.next()) {
-            String pkColumnName = pkRs.getString("COLUMN_NAME");
-            sb.append(", PRIMARY KEY (").append(pkColumnName).append(")");
+        // Set primary key constraint, every column of a composite key
+        if (withPrimaryKey && !sourceTable.getPrimaryKey().isEmpty()) {
+            sb.append(", PRIMARY KEY (").append(String.join(",", sourceTable.getPrimaryKey())).append(")");
         }
 
         sb.append(")");
@@ -142,6 +131,33 @@ public class MigrationUtils {
         return sb.toString();
     }
 
+    private static String getPostgresType(ColumnSchema column) {
+        if (column.isAutoIncrement()) {
+            return column.getTypeName().startsWith("BIGINT") ? "BIGSERIAL" : "SERIAL";
+        }
+        return mapMySqlTypeToPostgres(column.getTypeName());
+    }
+
+    /**
+     * @return the table {@link #generateCreateTableStatement} creates, without its indexes, the
+     * column type is the one in the DDL and the column type name its udt_name, as a
+     * {@code SchemaSnapshot} of the target reads it
+     */
+    public static TableSchema toPostgresTable(TableSchema sourceTable) {
+        List<ColumnSchema> columns = new ArrayList<>();
+        for (ColumnSchema column : sourceTable.getColumns()) {
+            String postgresType = getPostgresType(column);
+            String udtName = POSTGRES_UDT_NAMES.get(postgresType);
+            // a bit without a length is a bit(1)
+            columns.add(new ColumnSchema(column.getName().toLowerCase(), column.getPosition(), postgresType, udtName,
+                    column.isNullable(), column.isAutoIncrement(), null, "bit".equals(udtName) ? 1L : null,
+                    null, null));
+        }
+        List<String> primaryKey = sourceTable.getPrimaryKey().stream().map(String::toLowerCase)
+                .collect(Collectors.toList());
+        return new TableSchema(sourceTable.getName().toLowerCase(), columns, primaryKey, new ArrayList<>());
+    }
+
     public static String mapMySqlTypeToPostgres(String mySqlType) {
         mySqlType = mySqlType.toUpperCase();
         String postgresType = MYSQL_TO_POSTGRES_TYPE_MAP.get(mySqlType);
@@ -156,43 +172,46 @@ public class MigrationUtils {
         log.info("run");
     }
 
-    public static String getColumnDataTypeSql() {
-        return "SELECT DATA_TYPE FROM information_schema.COLUMNS WHERE TABLE_NAME= ? AND COLUMN_NAME= ?";
+    /**
+     * adds the columns of the source table the target table lacks
+     */
+    public static void fillTableField(TableSchema sourceTable, TableSchema targetTable, DataSource target) throws Exception {
+        String sql = generateAddColumnsStatement(targetTable, getMissingColumns(sourceTable, targetTable));
+        if (sql == null) {
+            return;
+        }
+        log.info("update sql:{}", sql);
+        try {
+            new JdbcTemplate(target).update(sql);
+        } catch (DataAccessException e) {
+            log.error("table [{}] add columns error : {}", targetTable.getName(), e.getMessage());
+            throw e;
+        }
     }
 
+    /**
+     * @return the columns of the source table the target table lacks
+     */
+    public static List<ColumnSchema> getMissingColumns(TableSchema sourceTable, TableSchema targetTable) {
+        return sourceTable.getColumns().stream()
+                .filter(column -> targetTable.getColumn(column.getName().toLowerCase()) == null)
+                .collect(Collectors.toList());
+    }
 
-    public static void fillTableField(String tabName, DataSource source, DataSource target) throws Exception {
-        String[] sourceColumns = getColumnsByTableName(source.getConnection(), tabName);
-        String[] targetColumns = getColumnsByTableName(target.getConnection(), tabName);
-        JdbcTemplate jdbcTemplate = new JdbcTemplate(target);
-        JdbcTemplate sjdbcTemplate = new JdbcTemplate(source);
-        for (String sourceColumn : sourceColumns) {
-            sourceColumn = sourceColumn.toLowerCase();
-            boolean isContains = Arrays.asList(targetColumns).contains(sourceColumn);
-            if (!isContains) {
-                String columnDataTypeSql = getColumnDataTypeSql();
-                log.info("query sql:{},{},{}", columnDataTypeSql,tabName,sourceColumn);
-                String mysqlDataType = sjdbcTemplate.queryForList(columnDataTypeSql, new Object[]{tabName, sourceColumn}, String.class).get(0);
-                String sqlTypeToPostgres = mapMySqlTypeToPostgres(mysqlDataType);
-                log.info("table: [{}],missing field: [{}],mysqlType: [{}], newType:[{}]", tabName, sourceColumn, mysqlDataType, sqlTypeToPostgres);
-                // fill field
-                StringBuilder sqlBuilder = new StringBuilder(String.format("ALTER TABLE %s ADD COLUMN ", tabName));
-                sqlBuilder.append(sourceColumn).append(" ").append(sqlTypeToPostgres);
-
-                //if (options != null) {
-                //    sqlBuilder.append(" ").append(options);
-                //}
-
-                String sql = sqlBuilder.toString();
-                log.info("update sql:{}", sql);
-                try {
-                    jdbcTemplate.update(sql);
-                } catch (BadSqlGrammarException e) {
-                    if(e.getMessage().contains("already exists")){
-                        log.info("field already exists");
-                    }
-                }
-            }
+    /**
+     * @return one ALTER TABLE adding all the columns, null when there are none
+     */
+    public static String generateAddColumnsStatement(TableSchema targetTable, List<ColumnSchema> columns) {
+        if (columns.isEmpty()) {
+            return null;
+        }
+        List<String> additions = new ArrayList<>();
+        for (ColumnSchema column : columns) {
+            String sqlTypeToPostgres = mapMySqlTypeToPostgres(column.getTypeName());
+            log.info("table: [{}],missing field: [{}],mysqlType: [{}], newType:[{}]", targetTable.getName(),
+                    column.getName().toLowerCase(), column.getTypeName(), sqlTypeToPostgres);
+            additions.add("ADD COLUMN " + column.getName().toLowerCase() + " " + sqlTypeToPostgres);
         }
+        return String.format("ALTER TABLE %s %s", targetTable.getName(), String.join(", ", additions));
     }
 }
\ No newline at end of file
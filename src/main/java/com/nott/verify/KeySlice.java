@@ -0,0 +1,68 @@
+package com.nott.verify;
+
+import com.nott.KeyRange;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * The rows of a key range whose key hash is {@code bucket} modulo {@code buckets}.
+ * <p>
+ * A range that can't be cut on its leading key column, as when all its rows share the
+ * first column of a composite key, is cut into buckets of the hash of the whole key
+ * instead. A key lands in the same bucket on both sides, whatever order they sort it in.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Getter
+public class KeySlice {
+
+    private final KeyRange range;
+    private final int buckets;
+    private final int bucket;
+
+    public KeySlice(KeyRange range) {
+        this(range, 1, 0);
+    }
+
+    private KeySlice(KeyRange range, int buckets, int bucket) {
+        this.range = range;
+        this.buckets = buckets;
+        this.bucket = bucket;
+    }
+
+    public boolean isHashed() {
+        return buckets > 1;
+    }
+
+    /**
+     * @return the slices of this slice on {@code parts} times as many buckets, a key
+     * in bucket b of n is in bucket b + n * i of n * parts for one i
+     */
+    public KeySlice[] cut(int parts) {
+        KeySlice[] slices = new KeySlice[parts];
+        for (int i = 0; i < parts; i++) {
+            slices[i] = new KeySlice(range, buckets * parts, bucket + buckets * i);
+        }
+        return slices;
+    }
+
+    /**
+     * @return the parameters of the range, then of the bucket condition if hashed
+     */
+    public List<Object> getParams() {
+        List<Object> params = range.getParams();
+        if (isHashed()) {
+            params.add(buckets);
+            params.add(bucket);
+        }
+        return params;
+    }
+
+    @Override
+    public String toString() {
+        return isHashed() ? String.format("%s#%d/%d", range, bucket, buckets) : range.toString();
+    }
+}
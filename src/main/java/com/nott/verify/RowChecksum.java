@@ -0,0 +1,193 @@
+package com.nott.verify;
+
+import com.nott.KeyRange;
+import com.nott.schema.ColumnSchema;
+import com.nott.schema.TableSchema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the checksum queries of a table for MySQL and PostgreSQL.
+ * <p>
+ * Every column is rendered as the same text on both sides: numbers in their plain form,
+ * approximate numbers rounded to 6 decimals, dates and times in ISO form with
+ * microseconds, binary as upper case hex, nulls as a marker no value can take. The text
+ * of a row is hashed with md5 and the first 60 bits are summed, so the checksum of a key
+ * range doesn't depend on the order the rows are read in and the sum fits a decimal on
+ * both sides.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+public class RowChecksum {
+
+    /**
+     * types without a text form both sides agree on, they aren't compared
+     */
+    private static final Set<String> SKIPPED_TYPES = new HashSet<>(Arrays.asList("JSON", "GEOMETRY", "POINT",
+            "LINESTRING", "POLYGON", "MULTIPOINT", "MULTILINESTRING", "MULTIPOLYGON", "GEOMETRYCOLLECTION"));
+
+    public enum Side {
+        SOURCE, TARGET
+    }
+
+    private final String sourceTable;
+    private final String targetTable;
+    private final List<ColumnSchema> sourceColumns = new ArrayList<>();
+    private final List<String> targetColumns = new ArrayList<>();
+    private final List<String> skippedColumns = new ArrayList<>();
+    private final List<String> sourceKeyColumns;
+    private final List<String> targetKeyColumns = new ArrayList<>();
+
+    public RowChecksum(TableSchema sourceTable, TableSchema targetTable) {
+        this.sourceTable = sourceTable.getName();
+        this.targetTable = targetTable.getName();
+        for (ColumnSchema column : sourceTable.getColumns()) {
+            ColumnSchema targetColumn = targetTable.getColumn(column.getName());
+            if (targetColumn == null || SKIPPED_TYPES.contains(getBaseType(column))) {
+                skippedColumns.add(column.getName());
+                continue;
+            }
+            sourceColumns.add(column);
+            targetColumns.add(targetColumn.getName());
+        }
+        this.sourceKeyColumns = sourceTable.getPrimaryKey();
+        for (String keyColumn : sourceKeyColumns) {
+            ColumnSchema targetColumn = targetTable.getColumn(keyColumn);
+            if (targetColumn == null) {
+                throw new IllegalStateException(String.format("key column %s of %s is missing on the target",
+                        keyColumn, targetTable.getName()));
+            }
+            targetKeyColumns.add(targetColumn.getName());
+        }
+    }
+
+    /**
+     * @return source columns left out of the checksum, missing on the target or without a common text form
+     */
+    public List<String> getSkippedColumns() {
+        return skippedColumns;
+    }
+
+    public List<String> getKeyColumns(Side side) {
+        return side == Side.SOURCE ? sourceKeyColumns : targetKeyColumns;
+    }
+
+    /**
+     * @return {@code row_count} and {@code row_hash} of the rows in the slice
+     */
+    public String getSummarySql(Side side, KeySlice slice) {
+        return String.format("select count(*) row_count, coalesce(sum(%s), 0) row_hash from %s%s",
+                getRowHash(side), getTable(side), getWhere(side, slice));
+    }
+
+    /**
+     * @return {@code row_key} as text and {@code row_hash} of every row in the slice
+     */
+    public String getRowsSql(Side side, KeySlice slice) {
+        return String.format("select %s row_key, %s row_hash from %s%s", getKeyText(side), getRowHash(side),
+                getTable(side), getWhere(side, slice));
+    }
+
+    public String getTable(Side side) {
+        return side == Side.SOURCE ? sourceTable : targetTable;
+    }
+
+    private String getWhere(Side side, KeySlice slice) {
+        List<String> conditions = new ArrayList<>();
+        KeyRange range = slice == null ? null : slice.getRange();
+        if (range != null && !range.getCondition().isEmpty()) {
+            conditions.add(range.getCondition(getKeyColumns(side).get(0)));
+        }
+        if (slice != null && slice.isHashed()) {
+            conditions.add(getKeyHash(side) + " % ? = ?");
+        }
+        return conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions);
+    }
+
+    private String getKeyText(Side side) {
+        List<String> keys = new ArrayList<>();
+        for (String keyColumn : getKeyColumns(side)) {
+            ColumnSchema column = sourceColumns.stream()
+                    .filter(c -> c.getName().equalsIgnoreCase(keyColumn)).findFirst().orElse(null);
+            keys.add(column == null ? keyColumn : getText(side, column, keyColumn));
+        }
+        return "concat_ws('|', " + String.join(", ", keys) + ")";
+    }
+
+    /**
+     * the first 32 bits of the md5 of the key text, the same number on both sides
+     */
+    private String getKeyHash(Side side) {
+        if (side == Side.SOURCE) {
+            return String.format("cast(conv(substr(md5(convert(%s using utf8mb4)), 1, 8), 16, 10) as unsigned)",
+                    getKeyText(side));
+        }
+        return String.format("cast(cast('x' || substr(md5(%s), 1, 8) as bit(32)) as bigint)", getKeyText(side));
+    }
+
+    private String getRowHash(Side side) {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < sourceColumns.size(); i++) {
+            String name = side == Side.SOURCE ? sourceColumns.get(i).getName() : targetColumns.get(i);
+            String text = getText(side, sourceColumns.get(i), name);
+            values.add(side == Side.SOURCE ? String.format("coalesce(concat('v', %s), 'n')", text)
+                    : String.format("coalesce('v' || %s, 'n')", text));
+        }
+        String row = "concat_ws('|', " + String.join(", ", values) + ")";
+        if (side == Side.SOURCE) {
+            // md5 hashes the bytes of the column charset, PostgreSQL hashes UTF-8
+            return String.format("cast(conv(substr(md5(convert(%s using utf8mb4)), 1, 15), 16, 10) as unsigned)", row);
+        }
+        return String.format("cast(cast('x' || substr(md5(%s), 1, 15) as bit(60)) as bigint)", row);
+    }
+
+    /**
+     * the text of a column both sides render the same way, by the type of the source column
+     */
+    private static String getText(Side side, ColumnSchema column, String name) {
+        boolean mysql = side == Side.SOURCE;
+        switch (getBaseType(column)) {
+            case "FLOAT":
+            case "DOUBLE":
+            case "REAL":
+                return mysql ? String.format("cast(cast(%s as decimal(65,6)) as char)", name)
+                        : String.format("cast(cast(cast(%s as double precision) as numeric(65,6)) as text)", name);
+            case "DATETIME":
+            case "TIMESTAMP":
+                return mysql ? String.format("date_format(%s, '%%Y-%%m-%%d %%H:%%i:%%s.%%f')", name)
+                        : String.format("to_char(%s, 'YYYY-MM-DD HH24:MI:SS.US')", name);
+            case "DATE":
+                return mysql ? String.format("date_format(%s, '%%Y-%%m-%%d')", name)
+                        : String.format("to_char(%s, 'YYYY-MM-DD')", name);
+            case "BIT":
+                return mysql ? String.format("cast(%s + 0 as char)", name)
+                        : String.format("cast(cast(%s as bigint) as text)", name);
+            case "BINARY":
+            case "VARBINARY":
+            case "TINYBLOB":
+            case "BLOB":
+            case "MEDIUMBLOB":
+            case "LONGBLOB":
+                return mysql ? String.format("hex(%s)", name) : String.format("upper(encode(%s, 'hex'))", name);
+            default:
+                return mysql ? String.format("cast(%s as char)", name) : String.format("cast(%s as text)", name);
+        }
+    }
+
+    private static String getBaseType(ColumnSchema column) {
+        return column.getTypeName().split(" ")[0].toUpperCase();
+    }
+
+    @Override
+    public String toString() {
+        return sourceTable + sourceColumns.stream().map(ColumnSchema::getName)
+                .collect(Collectors.joining(",", "(", ")"));
+    }
+}
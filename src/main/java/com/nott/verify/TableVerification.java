@@ -0,0 +1,63 @@
+package com.nott.verify;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of comparing one table on both sides, see {@link TableVerifier}.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Data
+public class TableVerification {
+
+    public enum Status {
+        PENDING, MATCH, MISMATCH, FAILED, CANCELLED
+    }
+
+    private final String tableName;
+
+    private Status status = Status.PENDING;
+
+    private long sourceRows;
+
+    private long targetRows;
+
+    /**
+     * key ranges checksummed, drill-down ranges included
+     */
+    private int ranges;
+
+    private int mismatchedRanges;
+
+    /**
+     * rows missing on the target, extra on the target and with other values, by key
+     */
+    private long missingRows;
+
+    private long extraRows;
+
+    private long differentRows;
+
+    /**
+     * keys of the first differing rows of each kind, up to {@code verifyMaxDiffs}
+     */
+    private final List<String> missingKeys = new ArrayList<>();
+
+    private final List<String> extraKeys = new ArrayList<>();
+
+    private final List<String> differentKeys = new ArrayList<>();
+
+    /**
+     * columns not compared, see {@link RowChecksum#getSkippedColumns()}
+     */
+    private List<String> skippedColumns = new ArrayList<>();
+
+    private long elapsedMillis;
+
+    private String error;
+}
@@ -0,0 +1,361 @@
+package com.nott.verify;
+
+import com.nott.JobControl;
+import com.nott.KeyRange;
+import com.nott.config.MigrationProperties;
+import com.nott.schema.SchemaSnapshot;
+import com.nott.schema.TableSchema;
+import com.nott.verify.RowChecksum.Side;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Proves a migrated table matches its source without moving the rows.
+ * <p>
+ * The table is cut into ranges of its leading key column and both sides compute a
+ * {@link RowChecksum} of every range, the queries of all ranges running in parallel on
+ * {@code verifyThreads} threads. Only a range whose row count or checksum differs is cut
+ * into smaller ranges and checksummed again, down to ranges of at most
+ * {@code verifyLeafRows} rows, whose row keys and hashes are then read from both sides
+ * and compared, a few ranges at a time. A range that can't be cut on the leading key
+ * column is cut into {@link KeySlice} buckets of the key hash. Matching tables cost one
+ * aggregate query per range and side.
+ *
+ * @author Nott
+ * @Date 2026/10/18
+ */
+
+@Slf4j
+public class TableVerifier {
+
+    private final DataSource source;
+    private final DataSource target;
+    private final JdbcTemplate sourceJdbc;
+    private final JdbcTemplate targetJdbc;
+    private final MigrationProperties properties;
+    private JobControl jobControl = new JobControl();
+
+    public TableVerifier(DataSource source, DataSource target, MigrationProperties properties) {
+        this.source = source;
+        this.target = target;
+        this.sourceJdbc = new JdbcTemplate(source);
+        this.targetJdbc = new JdbcTemplate(target);
+        this.properties = properties;
+    }
+
+    public void setJobControl(JobControl jobControl) {
+        this.jobControl = jobControl;
+    }
+
+    /**
+     * @param results one pending result per table, filled in as the tables are verified
+     */
+    public void verify(List<TableVerification> results) {
+        SchemaSnapshot sourceSchema = SchemaSnapshot.load(source);
+        SchemaSnapshot targetSchema = SchemaSnapshot.load(target);
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, properties.getVerifyThreads()),
+                r -> new Thread(r, "m2p-verify-" + threadIndex.incrementAndGet()));
+        try {
+            for (TableVerification result : results) {
+                long start = System.currentTimeMillis();
+                try {
+                    jobControl.checkCancelled();
+                    TableSchema sourceTable = sourceSchema.getTable(result.getTableName());
+                    TableSchema targetTable = targetSchema.getTable(result.getTableName());
+                    if (sourceTable == null || targetTable == null) {
+                        throw new IllegalStateException("table " + result.getTableName() + " is missing on "
+                                + (sourceTable == null ? "the source" : "the target"));
+                    }
+                    verify(new RowChecksum(sourceTable, targetTable), result, executor);
+                    log.info("table {} {}: {} rows on the source, {} on the target, {} of {} ranges differ",
+                            result.getTableName(), result.getStatus(), result.getSourceRows(),
+                            result.getTargetRows(), result.getMismatchedRanges(), result.getRanges());
+                } catch (CancellationException e) {
+                    result.setStatus(TableVerification.Status.CANCELLED);
+                    throw e;
+                } catch (Exception e) {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    log.error("verify table {} error : {}", result.getTableName(), cause.getMessage(), cause);
+                    result.setStatus(TableVerification.Status.FAILED);
+                    result.setError(cause.getMessage());
+                } finally {
+                    result.setElapsedMillis(System.currentTimeMillis() - start);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void verify(RowChecksum checksum, TableVerification result, ExecutorService executor) {
+        result.setSkippedColumns(checksum.getSkippedColumns());
+        boolean keyed = !checksum.getKeyColumns(Side.SOURCE).isEmpty();
+        List<KeySlice> ranges = keyed ? getInitialRanges(checksum).stream().map(KeySlice::new)
+                .collect(Collectors.toList()) : Collections.singletonList(new KeySlice(new KeyRange(0, "", null, null)));
+        List<KeySlice> leaves = new ArrayList<>();
+        boolean top = true;
+        while (!ranges.isEmpty()) {
+            jobControl.checkCancelled();
+            List<CompletableFuture<Summary[]>> summaries = ranges.stream()
+                    .map(range -> summarize(checksum, range, executor))
+                    .collect(Collectors.toList());
+            List<KeySlice> next = new ArrayList<>();
+            for (int i = 0; i < ranges.size(); i++) {
+                Summary[] summary = summaries.get(i).join();
+                result.setRanges(result.getRanges() + 1);
+                if (top) {
+                    result.setSourceRows(result.getSourceRows() + summary[0].rows);
+                    result.setTargetRows(result.getTargetRows() + summary[1].rows);
+                }
+                if (summary[0].matches(summary[1])) {
+                    continue;
+                }
+                result.setMismatchedRanges(result.getMismatchedRanges() + 1);
+                if (!keyed) {
+                    continue;
+                }
+                long rows = Math.max(summary[0].rows, summary[1].rows);
+                List<KeySlice> parts = rows <= properties.getVerifyLeafRows() ? Collections.emptyList()
+                        : split(checksum, ranges.get(i), summary[0].rows >= summary[1].rows ? Side.SOURCE : Side.TARGET,
+                        rows);
+                if (parts.isEmpty()) {
+                    leaves.add(ranges.get(i));
+                } else {
+                    next.addAll(parts);
+                }
+            }
+            ranges = next;
+            top = false;
+        }
+        compareRows(checksum, leaves, result, executor);
+        result.setStatus(result.getMismatchedRanges() == 0 ? TableVerification.Status.MATCH
+                : TableVerification.Status.MISMATCH);
+    }
+
+    /**
+     * integer keys are cut into {@code verifyChunks} ranges of equal width, other keys start
+     * as one range and are cut by sampling once their row count is known
+     */
+    private List<KeyRange> getInitialRanges(RowChecksum checksum) {
+        String column = checksum.getKeyColumns(Side.SOURCE).get(0);
+        KeyRange table = new KeyRange(0, column, null, null);
+        Map<String, Object> minMax = sourceJdbc.queryForMap(
+                String.format("select min(%1$s) min_key, max(%1$s) max_key from %2$s", column,
+                        checksum.getTable(Side.SOURCE)));
+        if (toBigInteger(minMax.get("min_key")) == null || toBigInteger(minMax.get("max_key")) == null) {
+            return Collections.singletonList(table);
+        }
+        List<KeyRange> ranges = toRanges(table, getIntegerSplitPoints(minMax));
+        return ranges.isEmpty() ? Collections.singletonList(table) : ranges;
+    }
+
+    /**
+     * @param side the side with more rows in the slice
+     * @return the parts of the slice, empty when it can't be cut
+     */
+    private List<KeySlice> split(RowChecksum checksum, KeySlice slice, Side side, long rows) {
+        if (!slice.isHashed()) {
+            List<KeyRange> parts = split(checksum, slice.getRange(), side, rows);
+            if (!parts.isEmpty()) {
+                return parts.stream().map(KeySlice::new).collect(Collectors.toList());
+            }
+        }
+        // the rows share the leading key column, or too few keys for the hash to tell apart
+        int parts = Math.max(2, properties.getVerifyChunks());
+        return (long) slice.getBuckets() * parts > Integer.MAX_VALUE ? Collections.emptyList()
+                : Arrays.asList(slice.cut(parts));
+    }
+
+    /**
+     * @param side the side with more rows in the range
+     * @return the parts of the range, empty when it can't be cut
+     */
+    private List<KeyRange> split(RowChecksum checksum, KeyRange range, Side side, long rows) {
+        JdbcTemplate jdbc = side == Side.SOURCE ? sourceJdbc : targetJdbc;
+        String column = checksum.getKeyColumns(side).get(0);
+        String where = range.getCondition().isEmpty() ? "" : " where " + range.getCondition(column);
+        Object[] params = range.getParams().toArray();
+        Map<String, Object> minMax = jdbc.queryForMap(String.format("select min(%1$s) min_key, max(%1$s) max_key"
+                + " from %2$s%3$s", column, checksum.getTable(side), where), params);
+        if (minMax.get("min_key") == null) {
+            return Collections.emptyList();
+        }
+        if (toBigInteger(minMax.get("min_key")) != null && toBigInteger(minMax.get("max_key")) != null) {
+            return toRanges(range, getIntegerSplitPoints(minMax));
+        }
+        String sampleSql = String.format("select %1$s from %2$s%3$s order by %1$s limit 1 offset ?", column,
+                checksum.getTable(side), where);
+        List<Object> splitPoints = new ArrayList<>();
+        int chunks = Math.max(2, properties.getVerifyChunks());
+        for (int i = 1; i < chunks; i++) {
+            List<Object> sampleParams = new ArrayList<>(range.getParams());
+            sampleParams.add(rows * i / chunks);
+            List<Object> sample = jdbc.queryForList(sampleSql, Object.class, sampleParams.toArray());
+            Object last = splitPoints.isEmpty() ? minMax.get("min_key") : splitPoints.get(splitPoints.size() - 1);
+            // a point at the first key would leave the range as it is
+            if (!sample.isEmpty() && !sample.get(0).equals(last)) {
+                splitPoints.add(sample.get(0));
+            }
+        }
+        return toRanges(range, splitPoints);
+    }
+
+    private List<Object> getIntegerSplitPoints(Map<String, Object> minMax) {
+        BigInteger min = toBigInteger(minMax.get("min_key"));
+        BigInteger max = toBigInteger(minMax.get("max_key"));
+        int chunks = Math.max(2, properties.getVerifyChunks());
+        BigInteger step = max.subtract(min).add(BigInteger.ONE).divide(BigInteger.valueOf(chunks)).max(BigInteger.ONE);
+        List<Object> splitPoints = new ArrayList<>();
+        for (int i = 1; i < chunks; i++) {
+            BigInteger splitPoint = min.add(step.multiply(BigInteger.valueOf(i)));
+            if (splitPoint.compareTo(max) > 0) {
+                break;
+            }
+            splitPoints.add(splitPoint.bitLength() < 64 ? (Object) splitPoint.longValue() : new BigDecimal(splitPoint));
+        }
+        return splitPoints;
+    }
+
+    private static List<KeyRange> toRanges(KeyRange range, List<Object> splitPoints) {
+        if (splitPoints.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<KeyRange> ranges = new ArrayList<>();
+        Object lower = range.getLower();
+        for (Object splitPoint : splitPoints) {
+            ranges.add(new KeyRange(ranges.size(), range.getColumn(), lower, splitPoint));
+            lower = splitPoint;
+        }
+        ranges.add(new KeyRange(ranges.size(), range.getColumn(), lower, range.getUpper()));
+        return ranges;
+    }
+
+    private CompletableFuture<Summary[]> summarize(RowChecksum checksum, KeySlice slice, ExecutorService executor) {
+        Object[] params = slice.getParams().toArray();
+        CompletableFuture<Summary> sourceSummary = CompletableFuture.supplyAsync(() -> sourceJdbc.queryForObject(
+                checksum.getSummarySql(Side.SOURCE, slice), Summary::read, params), executor);
+        CompletableFuture<Summary> targetSummary = CompletableFuture.supplyAsync(() -> targetJdbc.queryForObject(
+                checksum.getSummarySql(Side.TARGET, slice), Summary::read, params), executor);
+        return sourceSummary.thenCombine(targetSummary, (s, t) -> new Summary[]{s, t});
+    }
+
+    /**
+     * Reads the row hashes of the leaves from both sides, as many leaves at a time as there
+     * are threads, so no more than that many leaves are held. A key missing in one leaf and
+     * extra in another, as when the sides order text keys differently, is matched up across
+     * the leaves before it is reported.
+     */
+    private void compareRows(RowChecksum checksum, List<KeySlice> leaves, TableVerification result,
+                             ExecutorService executor) {
+        Map<String, String> missing = new HashMap<>();
+        Map<String, String> extra = new HashMap<>();
+        int window = Math.max(1, properties.getVerifyThreads());
+        for (int from = 0; from < leaves.size(); from += window) {
+            jobControl.checkCancelled();
+            List<CompletableFuture<Map<String, String>>> sourceRows = new ArrayList<>();
+            List<CompletableFuture<Map<String, String>>> targetRows = new ArrayList<>();
+            for (KeySlice leaf : leaves.subList(from, Math.min(leaves.size(), from + window))) {
+                Object[] params = leaf.getParams().toArray();
+                sourceRows.add(CompletableFuture.supplyAsync(() -> sourceJdbc.query(
+                        checksum.getRowsSql(Side.SOURCE, leaf), (ResultSetExtractor<Map<String, String>>) TableVerifier::readHashes, params), executor));
+                targetRows.add(CompletableFuture.supplyAsync(() -> targetJdbc.query(
+                        checksum.getRowsSql(Side.TARGET, leaf), (ResultSetExtractor<Map<String, String>>) TableVerifier::readHashes, params), executor));
+            }
+            for (int i = 0; i < sourceRows.size(); i++) {
+                Map<String, String> sourceHashes = sourceRows.get(i).join();
+                Map<String, String> targetHashes = targetRows.get(i).join();
+                for (Map.Entry<String, String> row : sourceHashes.entrySet()) {
+                    String targetHash = targetHashes.remove(row.getKey());
+                    if (targetHash == null) {
+                        missing.put(row.getKey(), row.getValue());
+                    } else if (!targetHash.equals(row.getValue())) {
+                        addDifferent(result, row.getKey());
+                    }
+                }
+                extra.putAll(targetHashes);
+            }
+        }
+        for (Iterator<Map.Entry<String, String>> it = missing.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, String> row = it.next();
+            String targetHash = extra.remove(row.getKey());
+            if (targetHash != null) {
+                it.remove();
+                if (!targetHash.equals(row.getValue())) {
+                    addDifferent(result, row.getKey());
+                }
+            }
+        }
+        result.setMissingRows(missing.size());
+        result.setExtraRows(extra.size());
+        missing.keySet().stream().sorted().limit(properties.getVerifyMaxDiffs()).forEach(result.getMissingKeys()::add);
+        extra.keySet().stream().sorted().limit(properties.getVerifyMaxDiffs()).forEach(result.getExtraKeys()::add);
+    }
+
+    private void addDifferent(TableVerification result, String key) {
+        result.setDifferentRows(result.getDifferentRows() + 1);
+        if (result.getDifferentKeys().size() < properties.getVerifyMaxDiffs()) {
+            result.getDifferentKeys().add(key);
+        }
+    }
+
+    private static Map<String, String> readHashes(ResultSet rs) throws SQLException {
+        Map<String, String> hashes = new HashMap<>();
+        while (rs.next()) {
+            hashes.put(rs.getString(1), rs.getString(2));
+        }
+        return hashes;
+    }
+
+    private static BigInteger toBigInteger(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return BigInteger.valueOf(((Number) value).longValue());
+        }
+        if (value instanceof BigInteger) {
+            return (BigInteger) value;
+        }
+        if (value instanceof BigDecimal && ((BigDecimal) value).scale() <= 0) {
+            return ((BigDecimal) value).toBigInteger();
+        }
+        return null;
+    }
+
+    private static class Summary {
+        private final long rows;
+        private final BigDecimal hash;
+
+        private Summary(long rows, BigDecimal hash) {
+            this.rows = rows;
+            this.hash = hash;
+        }
+
+        private static Summary read(ResultSet rs, int rowNum) throws SQLException {
+            return new Summary(rs.getLong(1), rs.getBigDecimal(2));
+        }
+
+        private boolean matches(Summary other) {
+            return rows == other.rows && hash.compareTo(other.hash) == 0;
+        }
+    }
+}